@@ -0,0 +1,132 @@
+package quickcrypt.core;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Decrypts a stream made by AEADOutputStream one segment at a time
+ * <p>
+ * A segment is only returned after its tag is checked, so every byte read is authentic. One byte past each
+ * segment is read ahead to know if it is the last, and a stream cut off between segments fails because its
+ * final segment was not encrypted as the last one. Only one segment is held in memory at a time
+ *
+ * @author Adam Spiegel
+ *
+ * @see AEADOutputStream
+ */
+
+public class AEADInputStream extends InputStream {
+
+	private final InputStream in;
+	private final String type;
+	private final SecretKeySpec key;
+	private final byte[] head, aad; //authenticated with every segment
+	private final byte[] nonce = new byte[Cryptography.NONCE];
+	private final byte[] buf; //one encrypted segment and tag, plus 1 byte read ahead
+	private int count; //bytes in buf
+	private long segment; //number of the next segment
+	private boolean last; //last segment has been decrypted
+	private IOException failed; //why the stream can not be read any further, thrown again by every read
+
+	private byte[] plain = new byte[0]; //decrypted segment being read
+	private int pos;
+
+	/**
+	 * @param in
+	 *            stream positioned right after head
+	 * @param type
+	 *            authenticated algorithm code
+	 * @param key
+	 *            key for type
+	 * @param head
+	 *            stream header that was read, ending with the nonce prefix and segment bits
+	 * @param aad
+	 *            same aad given to encrypt (may be null)
+	 */
+	AEADInputStream(InputStream in, String type, SecretKeySpec key, byte[] head, byte[] aad) {
+		this.in = in;
+		this.type = type;
+		this.key = key;
+		this.head = head;
+		this.aad = aad;
+
+		System.arraycopy(head, head.length - 1 - AEADOutputStream.NONCEPREFIX, nonce, 0, AEADOutputStream.NONCEPREFIX);
+		buf = new byte[(1 << head[head.length - 1]) + Cryptography.TAGSIZE + 1];
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+
+		while (pos == plain.length) {
+			if (last)
+				return -1;
+			if (failed != null)
+				throw failed;
+			try {
+				open();
+			} catch (IOException e) {
+				failed = e; //reading again must not look like the end of the stream
+				throw e;
+			}
+		}
+
+		int n = Math.min(len, plain.length - pos);
+		System.arraycopy(plain, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return plain.length - pos;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * read and decrypt the next segment
+	 */
+	private void open() throws IOException {
+
+		while (count < buf.length) { //fill the segment and the byte after it
+			int read = in.read(buf, count, buf.length - count);
+			if (read == -1)
+				break;
+			count += read;
+		}
+
+		boolean end = count < buf.length; //nothing after this segment
+		int len = end ? count : buf.length - 1;
+		if (len < Cryptography.TAGSIZE)
+			throw new IOException("Encrypted stream is incomplete");
+		if (segment > 0xFFFFFFFFL)
+			throw new IOException("Too many segments in one stream");
+
+		AEADOutputStream.setNonce(nonce, segment, end);
+		try {
+			plain = Secret.open(type, key, nonce, 0, buf, 0, len, head, aad);
+		} catch (QCError e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		segment++;
+		pos = 0;
+		last = end; //only once the tag is checked
+
+		if (!last) { //keep the byte read ahead
+			buf[0] = buf[buf.length - 1];
+			count = 1;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package quickcrypt.core;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Encrypts everything written to it in fixed size segments with an authenticated algorithm (STREAM construction)
+ * <p>
+ * Each segment is encrypted on its own with the nonce: random prefix (7 bytes), segment number (4 bytes BigEndian)
+ * and a last segment flag (1 byte). Segments can not be reordered, dropped or cut off at the end without
+ * failing decryption, and only one segment is held in memory at a time no matter how much is written.
+ * The key should only be used for one stream, Secret derives it from a random salt in the head.
+ * Every segment but the last holds exactly the segment size of plain bytes.
+ * Nothing is encrypted until a segment fills or the stream is closed, so close() must be called
+ *
+ * @author Adam Spiegel
+ *
+ * @see AEADInputStream
+ */
+
+public class AEADOutputStream extends OutputStream {
+
+	final static int SALT = 16; //random bytes in the header that the stream's key is derived from
+	final static int NONCEPREFIX = 7; //random bytes at the start of every segment nonce
+	final static int SEGMENTBITS = 16; //default segment size is 2^16 bytes
+	final static int MINSEGMENTBITS = 10, MAXSEGMENTBITS = 24; //smallest and largest segment sizes accepted
+
+	private final OutputStream out;
+	private final String type;
+	private final SecretKeySpec key;
+	private final byte[] head, aad; //authenticated with every segment
+	private final byte[] nonce = new byte[Cryptography.NONCE];
+	private final byte[] buf; //plain bytes of the current segment
+	private int count;
+	private long segment; //number of the current segment
+	private boolean closed;
+
+	/**
+	 * Writes head then encrypts to out
+	 *
+	 * @param out
+	 *            stream encrypted bytes are written to
+	 * @param type
+	 *            authenticated algorithm code
+	 * @param key
+	 *            key for type, only used for this stream
+	 * @param head
+	 *            stream header, ending with the nonce prefix and segment bits
+	 * @param aad
+	 *            data sent separately that decryption must be given unchanged (may be null)
+	 * @throws IOException
+	 *             if head could not be written
+	 */
+	AEADOutputStream(OutputStream out, String type, SecretKeySpec key, byte[] head, byte[] aad) throws IOException {
+		this.out = out;
+		this.type = type;
+		this.key = key;
+		this.head = head;
+		this.aad = aad;
+
+		System.arraycopy(head, head.length - 1 - NONCEPREFIX, nonce, 0, NONCEPREFIX);
+		buf = new byte[1 << head[head.length - 1]];
+		out.write(head);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed)
+			throw new IOException("Stream is closed");
+
+		while (len > 0) {
+			if (count == buf.length) //full and more is coming, so it is not the last
+				seal(false);
+
+			int n = Math.min(len, buf.length - count);
+			System.arraycopy(b, off, buf, count, n);
+			count += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Flushes the underlying stream, bytes of an unfinished segment are kept until it is full or closed
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Encrypts the last segment and closes the underlying stream
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+
+		seal(true);
+		out.close();
+	}
+
+	/**
+	 * encrypt and write the buffered segment
+	 */
+	private void seal(boolean last) throws IOException {
+		if (segment > 0xFFFFFFFFL)
+			throw new IOException("Too many segments in one stream");
+
+		setNonce(nonce, segment++, last);
+		try {
+			out.write(Secret.seal(type, key, nonce, buf, 0, count, head, aad));
+		} catch (QCError e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		count = 0;
+	}
+
+	/**
+	 * put the segment number and last flag after the prefix
+	 */
+	static void setNonce(byte[] nonce, long segment, boolean last) {
+		nonce[NONCEPREFIX] = (byte) (segment >>> 24);
+		nonce[NONCEPREFIX + 1] = (byte) (segment >>> 16);
+		nonce[NONCEPREFIX + 2] = (byte) (segment >>> 8);
+		nonce[NONCEPREFIX + 3] = (byte) segment;
+		nonce[NONCEPREFIX + 4] = (byte) (last ? 1 : 0);
+	}
+}
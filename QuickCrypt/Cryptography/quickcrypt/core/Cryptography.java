@@ -1,10 +1,13 @@
 package quickcrypt.core;
 import java.security.SecureRandom;
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
 
+import javax.crypto.AEADBadTagException;
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -12,14 +15,67 @@ import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.spec.AlgorithmParameterSpec;
 
 /**
  * Collection of static functions useful for cryptography
+ * <p>
+ * Cipher and MessageDigest objects are slow to look up, so each thread keeps its own to reuse.
+ * A Cipher given the same key again skips expanding it, so callers should keep their SecretKeySpecs
  * 
  * @author Adam Spiegel
  */
 public class Cryptography {
 	
+	final static int NONCE = 12; //bytes of nonce for AES-GCM and ChaCha20-Poly1305
+	final static int TAGSIZE = 16; //bytes of tag for AES-GCM and ChaCha20-Poly1305
+	final static int GCMTAGBITS = TAGSIZE*8;
+	
+	private static final SecureRandom RANDOM = new SecureRandom(); //thread safe, seeded once
+	
+	/// reusable objects for each thread, null if the algorithm is missing
+	private static final ThreadLocal<Cipher> AESCBC = cipher("AES/CBC/PKCS5Padding");
+	private static final ThreadLocal<Cipher> AESGCM = cipher("AES/GCM/NoPadding");
+	private static final ThreadLocal<Cipher> CHACHA = cipher("ChaCha20-Poly1305"); //java 11 and newer
+	private static final ThreadLocal<MessageDigest> SHA256 = digest("SHA-256");
+	private static final ThreadLocal<MessageDigest> SHA512 = digest("SHA-512");
+	private static final ThreadLocal<Mac> HMACSHA256 = new ThreadLocal<Mac>() {
+		@Override
+		protected Mac initialValue() {
+			try {
+				return Mac.getInstance("HmacSHA256");
+			} catch (NoSuchAlgorithmException e) {
+				return null;
+			}
+		}
+	};
+	
+	private static ThreadLocal<Cipher> cipher(final String transformation) {
+		return new ThreadLocal<Cipher>() {
+			@Override
+			protected Cipher initialValue() {
+				try {
+					return Cipher.getInstance(transformation);
+				} catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+					return null;
+				}
+			}
+		};
+	}
+	
+	private static ThreadLocal<MessageDigest> digest(final String algorithm) {
+		return new ThreadLocal<MessageDigest>() {
+			@Override
+			protected MessageDigest initialValue() {
+				try {
+					return MessageDigest.getInstance(algorithm);
+				} catch (NoSuchAlgorithmException e) {
+					return null;
+				}
+			}
+		};
+	}
+	
 	/**
 	 * Generates random bytes with SecureRandom
 	 * @param num desired size of random output
@@ -27,9 +83,8 @@ public class Cryptography {
 	 */
 	public static byte[] randomBytes(int num)
 	{
-		SecureRandom random = new SecureRandom();
 	    byte bytes[] = new byte[num];
-	    random.nextBytes(bytes);
+	    RANDOM.nextBytes(bytes);
 		return bytes;
 	}
 
@@ -39,10 +94,8 @@ public class Cryptography {
 	 * @return 64 bytes to return
 	 */
 	public static byte[] SHA512(byte[] input){
-		MessageDigest digest;
-		try {
-			digest = MessageDigest.getInstance("SHA-512");
-		} catch (NoSuchAlgorithmException e) {return null;}
+		MessageDigest digest = SHA512.get();
+		if(digest==null)return null;
 		
 		digest.reset();
 		digest.update(input);
@@ -55,16 +108,35 @@ public class Cryptography {
 	 * @return 32 bytes to return
 	 */
 	public static byte[] SHA256(byte[] input){
-		MessageDigest digest;
-		try {
-			digest = MessageDigest.getInstance("SHA-256");
-		} catch (NoSuchAlgorithmException e) {return null;}
+		MessageDigest digest = SHA256.get();
+		if(digest==null)return null;
 		
 		digest.reset();
 		digest.update(input);
 		return digest.digest();
 	 }
 	
+	/**
+	 * HMAC-SHA256 of data joined together, used to derive separate keys from one key
+	 * @param key secret key
+	 * @param data bytes to authenticate, in order
+	 * @return 32 bytes to return
+	 * @throws QCError if HMAC-SHA256 is missing or key is empty
+	 */
+	public static byte[] HMACSHA256(byte[] key, byte[]... data) throws QCError {
+		Mac mac = HMACSHA256.get();
+		if(mac==null)throw new QCError("HMAC-SHA256 is not supported");
+		
+		try {
+			mac.init(new SecretKeySpec(key, "HmacSHA256"));
+		} catch (InvalidKeyException | IllegalArgumentException e) {
+			throw new QCError("Invalid HMAC key");
+		}
+		for(byte[] d : data)
+			mac.update(d);
+		return mac.doFinal();
+	 }
+	
 	/**
 	 * Encrypts any bytes with AES256
 	 * @param input bytes to encrypt
@@ -74,26 +146,34 @@ public class Cryptography {
 	 * @throws QCError if an error occured while trying to encrypt or inputs were invalid
 	 */
 	public static byte[] encryptAES(byte[] input, byte[] key, byte[] iv) throws QCError 
+	{
+		return encryptAES(input, new SecretKeySpec(key, "AES"), iv);
+	}
+	
+	/**
+	 * Encrypts any bytes with AES, reusing this thread's Cipher
+	 * @param input bytes to encrypt
+	 * @param key 128 or 256-bit AES key, the same spec for every message avoids expanding the key again
+	 * @param iv 128-bit (16-byte) random and unique array
+	 * @return encrypted output
+	 * @throws QCError if an error occured while trying to encrypt or inputs were invalid
+	 */
+	public static byte[] encryptAES(byte[] input, SecretKeySpec key, byte[] iv) throws QCError 
 	{
 		try {
-			Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-			cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+			Cipher cipher = AESCBC.get();
+			if(cipher==null)throw new QCError("No Such Algorithm Exception");
+			cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
 			return cipher.doFinal(input);
 		} catch (InvalidKeyException e) {
-			if(e.getMessage().equals("Illegal key size"))
-				throw new QCError("Illegal key size, this probobly means that, AES-"+(key.length*8)
+			if("Illegal key size".equals(e.getMessage()))
+				throw new QCError("Illegal key size, this probobly means that, AES-"+(key.getEncoded().length*8)
 								+" is not supported or not allowed by your machine's java try a smaller AES");
 			throw new QCError(e.getMessage());
 		} catch (IllegalBlockSizeException e) {
-			throw new QCError("Block size, "+key.length+", is illegal");
+			throw new QCError("Block size, "+key.getEncoded().length+", is illegal");
 		} catch (BadPaddingException e) {
 			throw new QCError("Bad Padding: "+e.getMessage());
-		} catch (NoSuchAlgorithmException e) {
-			e.printStackTrace();
-			return null;
-		} catch (NoSuchPaddingException e) {
-			e.printStackTrace();
-			return null;
 		} catch (InvalidAlgorithmParameterException e) {
 			e.printStackTrace();
 			return null;
@@ -109,27 +189,198 @@ public class Cryptography {
 	 * @throws QCError if input is invalid, the key or the iv was not the same used to encrypt, or they were wrong sizes
 	 */
 	public static byte[] decryptAES(byte[] input, byte[] key, byte[] iv) throws QCError 
+	{
+		return decryptAES(input, 0, input.length, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+	}
+	
+	/**
+	 * Decrypts part of an array encrypted with AES, reusing this thread's Cipher
+	 * @param input array holding encrypted bytes
+	 * @param off first encrypted byte
+	 * @param len number of encrypted bytes
+	 * @param key 128 or 256-bit AES key used to encrypt
+	 * @param iv same iv as encrypted with
+	 * @return decrypted output
+	 * @throws QCError if input is invalid, the key or the iv was not the same used to encrypt, or they were wrong sizes
+	 */
+	public static byte[] decryptAES(byte[] input, int off, int len, SecretKeySpec key, IvParameterSpec iv) throws QCError 
 	{
 		try {
-			Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-			cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
-			return cipher.doFinal(input);
+			Cipher cipher = AESCBC.get();
+			if(cipher==null)throw new QCError("No Such Algorithm Exception");
+			cipher.init(Cipher.DECRYPT_MODE, key, iv);
+			return cipher.doFinal(input, off, len);
 			
 		} catch (InvalidKeyException e) {
-			if(e.getMessage().equals("Illegal key size"))
-				throw new QCError("Illegal key size, this probobly means that, AES-"+(key.length*8)
+			if("Illegal key size".equals(e.getMessage()))
+				throw new QCError("Illegal key size, this probobly means that, AES-"+(key.getEncoded().length*8)
 								+" is not supported or not allowed by your machine's java try a smaller AES");
 			throw new QCError(e.getMessage());
 		} catch (IllegalBlockSizeException e) {
-			throw new QCError("Block size, "+key.length+", is illegal");
+			throw new QCError("Block size, "+key.getEncoded().length+", is illegal");
 		} catch (BadPaddingException e) {
 			throw new QCError("Bad Padding or Incorrect key: "+e.getMessage());
-		} catch (NoSuchAlgorithmException e) {
-			throw new QCError("No Such Algorithm Exception");
-		} catch (NoSuchPaddingException e) {
-			throw new QCError("No Such Padding Exception");
 		} catch (InvalidAlgorithmParameterException e) {
 			throw new QCError("Invalid Algorithm Parrameter");
 		}
 	}
+	
+	/**
+	 * Encrypts and authenticates any bytes with AES-GCM, reusing this thread's Cipher
+	 * @param input bytes to encrypt
+	 * @param key 128 or 256-bit AES key
+	 * @param nonce 96-bit (12-byte) nonce, must never repeat with the same key
+	 * @param aad data that is not encrypted but can not be changed without failing decryption, null entries are skipped
+	 * @return encrypted output followed by a 16 byte tag
+	 * @throws QCError if an error occured while trying to encrypt or inputs were invalid
+	 */
+	public static byte[] encryptGCM(byte[] input, SecretKeySpec key, byte[] nonce, byte[]... aad) throws QCError 
+	{
+		return encryptGCM(input, 0, input.length, key, nonce, aad);
+	}
+	
+	/**
+	 * Encrypts and authenticates part of an array with AES-GCM
+	 * @param input array holding bytes to encrypt
+	 * @param off first byte to encrypt
+	 * @param len number of bytes to encrypt
+	 * @param key 128 or 256-bit AES key
+	 * @param nonce 96-bit (12-byte) nonce, must never repeat with the same key
+	 * @param aad data that is not encrypted but can not be changed without failing decryption, null entries are skipped
+	 * @return encrypted output followed by a 16 byte tag
+	 * @throws QCError if an error occured while trying to encrypt or inputs were invalid
+	 */
+	public static byte[] encryptGCM(byte[] input, int off, int len, SecretKeySpec key, byte[] nonce, byte[]... aad) throws QCError 
+	{
+		return encryptAEAD(AESGCM, "AES-GCM", input, off, len, key, new GCMParameterSpec(GCMTAGBITS, nonce), aad);
+	}
+	
+	/**
+	 * Decrypts part of an array encrypted with AES-GCM and checks its tag
+	 * @param input array holding encrypted bytes and tag
+	 * @param off first encrypted byte
+	 * @param len number of encrypted bytes, including the tag
+	 * @param key 128 or 256-bit AES key used to encrypt
+	 * @param nonce array holding the nonce used to encrypt
+	 * @param nonceOff first byte of the nonce
+	 * @param aad same associated data as encrypted with, null entries are skipped
+	 * @return decrypted output
+	 * @throws QCError if the key, nonce, associated data or input are not what was used to encrypt
+	 */
+	public static byte[] decryptGCM(byte[] input, int off, int len, SecretKeySpec key, byte[] nonce, int nonceOff, byte[]... aad) throws QCError 
+	{
+		return decryptAEAD(AESGCM, "AES-GCM", input, off, len, key, new GCMParameterSpec(GCMTAGBITS, nonce, nonceOff, NONCE), aad);
+	}
+	
+	/**
+	 * Encrypts and authenticates any bytes with ChaCha20-Poly1305, which is fast without AES instructions. Needs java 11 or newer
+	 * @param input bytes to encrypt
+	 * @param key 256-bit ChaCha20 key
+	 * @param nonce 96-bit (12-byte) nonce, must never repeat with the same key
+	 * @param aad data that is not encrypted but can not be changed without failing decryption, null entries are skipped
+	 * @return encrypted output followed by a 16 byte tag
+	 * @throws QCError if an error occured while trying to encrypt, inputs were invalid or java is too old
+	 */
+	public static byte[] encryptChaCha20(byte[] input, SecretKeySpec key, byte[] nonce, byte[]... aad) throws QCError 
+	{
+		return encryptChaCha20(input, 0, input.length, key, nonce, aad);
+	}
+	
+	/**
+	 * Encrypts and authenticates part of an array with ChaCha20-Poly1305. Needs java 11 or newer
+	 * @param input array holding bytes to encrypt
+	 * @param off first byte to encrypt
+	 * @param len number of bytes to encrypt
+	 * @param key 256-bit ChaCha20 key
+	 * @param nonce 96-bit (12-byte) nonce, must never repeat with the same key
+	 * @param aad data that is not encrypted but can not be changed without failing decryption, null entries are skipped
+	 * @return encrypted output followed by a 16 byte tag
+	 * @throws QCError if an error occured while trying to encrypt, inputs were invalid or java is too old
+	 */
+	public static byte[] encryptChaCha20(byte[] input, int off, int len, SecretKeySpec key, byte[] nonce, byte[]... aad) throws QCError 
+	{
+		return encryptAEAD(CHACHA, "ChaCha20-Poly1305", input, off, len, key, new IvParameterSpec(nonce), aad);
+	}
+	
+	/**
+	 * Decrypts part of an array encrypted with ChaCha20-Poly1305 and checks its tag
+	 * @param input array holding encrypted bytes and tag
+	 * @param off first encrypted byte
+	 * @param len number of encrypted bytes, including the tag
+	 * @param key 256-bit ChaCha20 key used to encrypt
+	 * @param nonce array holding the nonce used to encrypt
+	 * @param nonceOff first byte of the nonce
+	 * @param aad same associated data as encrypted with, null entries are skipped
+	 * @return decrypted output
+	 * @throws QCError if the key, nonce, associated data or input are not what was used to encrypt
+	 */
+	public static byte[] decryptChaCha20(byte[] input, int off, int len, SecretKeySpec key, byte[] nonce, int nonceOff, byte[]... aad) throws QCError 
+	{
+		return decryptAEAD(CHACHA, "ChaCha20-Poly1305", input, off, len, key, new IvParameterSpec(nonce, nonceOff, NONCE), aad);
+	}
+	
+	/**
+	 * @param name name of the algorithm, for errors
+	 * @return encrypted output followed by the tag
+	 */
+	private static byte[] encryptAEAD(ThreadLocal<Cipher> cipherCache, String name, byte[] input, int off, int len, SecretKeySpec key, AlgorithmParameterSpec params, byte[]... aad) throws QCError
+	{
+		try {
+			Cipher cipher = cipherCache.get();
+			if(cipher==null)throw new QCError(name+" is not supported by your machine's java");
+			cipher.init(Cipher.ENCRYPT_MODE, key, params);
+			for(byte[] a:aad)
+				if(a!=null)cipher.updateAAD(a);
+			return cipher.doFinal(input, off, len);
+		} catch (InvalidKeyException e) {
+			if("Illegal key size".equals(e.getMessage()))
+				throw new QCError("Illegal key size, this probobly means that, "+name+" with a "+(key.getEncoded().length*8)
+								+"-bit key is not supported or not allowed by your machine's java try a smaller key");
+			throw new QCError(e.getMessage());
+		} catch (IllegalBlockSizeException | BadPaddingException | InvalidAlgorithmParameterException e) {
+			throw new QCError(name+" encryption failed: "+e.getMessage());
+		}
+	}
+	
+	/**
+	 * @param name name of the algorithm, for errors
+	 * @return decrypted output
+	 */
+	private static byte[] decryptAEAD(ThreadLocal<Cipher> cipherCache, String name, byte[] input, int off, int len, SecretKeySpec key, AlgorithmParameterSpec params, byte[]... aad) throws QCError
+	{
+		if(len<TAGSIZE)throw new QCError("Encrypted data is too short");
+		try {
+			Cipher cipher = cipherCache.get();
+			if(cipher==null)throw new QCError(name+" is not supported by your machine's java");
+			try {
+				cipher.init(Cipher.DECRYPT_MODE, key, params);
+			} catch (InvalidKeyException e) { //ChaCha20 refuses the key and nonce it was last given, even to decrypt the same message again
+				cipher = Cipher.getInstance(cipher.getAlgorithm());
+				cipherCache.set(cipher);
+				cipher.init(Cipher.DECRYPT_MODE, key, params);
+			}
+			for(byte[] a:aad)
+				if(a!=null)cipher.updateAAD(a);
+			return cipher.doFinal(input, off, len);
+		} catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+			throw new QCError(name+" is not supported by your machine's java");
+		} catch (InvalidKeyException e) {
+			if("Illegal key size".equals(e.getMessage()))
+				throw new QCError("Illegal key size, this probobly means that, "+name+" with a "+(key.getEncoded().length*8)
+								+"-bit key is not supported or not allowed by your machine's java try a smaller key");
+			throw new QCError(e.getMessage());
+		} catch (AEADBadTagException e) {
+			throw new QCError("Incorrect key or the message was changed");
+		} catch (IllegalBlockSizeException | BadPaddingException | InvalidAlgorithmParameterException e) {
+			throw new QCError(name+" decryption failed: "+e.getMessage());
+		}
+	}
+	
+	/**
+	 * @return true if this java has ChaCha20-Poly1305 (java 11 and newer)
+	 */
+	public static boolean hasChaCha20()
+	{
+		return CHACHA.get()!=null;
+	}
 }
@@ -1,5 +1,10 @@
 package quickcrypt.core;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.Scanner;
 
@@ -13,6 +18,79 @@ public abstract class Encryptor {
 	public abstract byte[] encrypt(byte[] in) throws QCError;
 	public abstract byte[] decrypt(byte[] in) throws QCError;
 	
+	/**
+	 * Encrypt while authenticating associated data that is sent separately, such as the Quick Crypt info header.
+	 * Encryptors that can not authenticate it ignore it
+	 * @param in bytes to encrypt
+	 * @param aad associated data, decrypt must be given the same bytes
+	 * @return encrypted bytes
+	 * @throws QCError if encryption failed
+	 */
+	public byte[] encrypt(byte[] in, byte[] aad) throws QCError
+	{
+		return encrypt(in);
+	}
+	
+	/**
+	 * Decrypt bytes from encrypt(in, aad)
+	 * @param in bytes to decrypt
+	 * @param aad associated data given to encrypt
+	 * @return decrypted bytes
+	 * @throws QCError if decryption failed or in or aad were changed
+	 */
+	public byte[] decrypt(byte[] in, byte[] aad) throws QCError
+	{
+		return decrypt(in);
+	}
+	
+	/**
+	 * Wrap a stream so everything written to it is encrypted. By default everything is
+	 * kept in memory and encrypted as one message on close, so memory grows with the stream and
+	 * more than 2GB fails. Encryptors that can encrypt in pieces should override this to use little memory
+	 * @param out stream to write encrypted bytes to, closed when the returned stream is closed
+	 * @param aad associated data, decryptStream must be given the same bytes
+	 * @return stream to write plain bytes to, must be closed to finish encrypting
+	 * @throws QCError if encryption can not start
+	 * @throws IOException if out fails
+	 */
+	public OutputStream encryptStream(final OutputStream out, final byte[] aad) throws QCError, IOException
+	{
+		return new ByteArrayOutputStream() {
+			private boolean closed;
+			
+			@Override
+			public void close() throws IOException {
+				if(closed)return;
+				closed = true;
+				try {
+					out.write(encrypt(toByteArray(), aad));
+				} catch (QCError e) {
+					throw new IOException(e.getMessage(), e);
+				}
+				out.close();
+			}
+		};
+	}
+	
+	/**
+	 * Wrap a stream from encryptStream so reading it decrypts. By default all of in is
+	 * read and decrypted as one message right away
+	 * @param in stream of encrypted bytes, closed when the returned stream is closed
+	 * @param aad associated data given to encryptStream
+	 * @return stream of decrypted bytes
+	 * @throws QCError if decryption failed or in or aad were changed
+	 * @throws IOException if in fails
+	 */
+	public InputStream decryptStream(InputStream in, byte[] aad) throws QCError, IOException
+	{
+		ByteArrayOutputStream all = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		for(int read;(read = in.read(buf))!=-1;)
+			all.write(buf,0,read);
+		in.close();
+		return new ByteArrayInputStream(decrypt(all.toByteArray(), aad));
+	}
+	
 	public abstract String base64Id(); //unique two base64 char Identifier
 	public abstract String shortName(); //name
 	public abstract String description();
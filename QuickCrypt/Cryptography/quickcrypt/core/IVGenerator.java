@@ -0,0 +1,156 @@
+package quickcrypt.core;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Generates IVs and nonces without touching the system entropy source for every message
+ * <p>
+ * Each thread has its own HMAC-SHA256 DRBG (NIST SP 800-90A HMAC_DRBG), seeded once from SecureRandom
+ * and reseeded after RESEEDCOUNT requests or RESEEDMILLIS milliseconds, whichever comes first.
+ * Threads never share state, so generating IVs does not contend on a lock.
+ * IVs only need to be unpredictable and unique, keys should still come from Cryptography.randomBytes
+ *
+ * @author Adam Spiegel
+ *
+ */
+
+public class IVGenerator {
+
+	final static int SEEDSIZE = 48; //bytes of entropy for each seed and reseed
+	final static int MAXREQUEST = 65536; //most bytes made by one generate call
+	final static int RESEEDCOUNT = 1 << 16; //generate calls before reseeding
+	final static long RESEEDMILLIS = 10 * 60 * 1000; //time before reseeding
+
+	private static final ThreadLocal<IVGenerator> GENERATORS = new ThreadLocal<IVGenerator>() {
+		@Override
+		protected IVGenerator initialValue() {
+			try {
+				return new IVGenerator();
+			} catch (NoSuchAlgorithmException e) {
+				return null; //use SecureRandom instead
+			}
+		}
+	};
+
+	private final Mac mac;
+	private final byte[] k = new byte[32], v = new byte[32];
+	private int requests; //generate calls since the last seed
+	private long seeded; //time of the last seed
+
+	private IVGenerator() throws NoSuchAlgorithmException {
+		mac = Mac.getInstance("HmacSHA256");
+		Arrays.fill(v, (byte) 1);
+		reseed(); //k starts as 0s
+	}
+
+	/**
+	 * Make one random IV
+	 *
+	 * @param size
+	 *            IV size in bytes
+	 * @return random bytes of size size
+	 */
+	public static byte[] nextIV(int size) {
+		byte[] iv = new byte[size];
+		nextBytes(iv, 0, size);
+		return iv;
+	}
+
+	/**
+	 * Make many random IVs at once, for encrypting a batch of messages
+	 *
+	 * @param n
+	 *            number of IVs
+	 * @param size
+	 *            size of each IV in bytes
+	 * @return n random IVs of size size
+	 */
+	public static byte[][] nextIVs(int n, int size) {
+		byte[] all = new byte[n * size]; //one request for the whole batch
+		nextBytes(all, 0, all.length);
+
+		byte[][] ivs = new byte[n][];
+		for (int x = 0; x < n; x++)
+			ivs[x] = Arrays.copyOfRange(all, x * size, (x + 1) * size);
+		return ivs;
+	}
+
+	/**
+	 * Fill part of an array with random bytes from this thread's generator
+	 *
+	 * @param out
+	 *            array to fill
+	 * @param off
+	 *            first byte to fill
+	 * @param len
+	 *            number of bytes to fill
+	 */
+	public static void nextBytes(byte[] out, int off, int len) {
+		IVGenerator generator = GENERATORS.get();
+		if (generator == null) {
+			System.arraycopy(Cryptography.randomBytes(len), 0, out, off, len);
+			return;
+		}
+
+		for (int done = 0; done < len; done += MAXREQUEST)
+			generator.generate(out, off + done, Math.min(MAXREQUEST, len - done));
+	}
+
+	/**
+	 * HMAC_DRBG generate, reseeding first if it is time
+	 */
+	private void generate(byte[] out, int off, int len) {
+		if (requests >= RESEEDCOUNT || System.currentTimeMillis() - seeded >= RESEEDMILLIS)
+			reseed();
+
+		for (int done = 0; done < len; done += v.length) {
+			hmac(null, null, v);
+			System.arraycopy(v, 0, out, off + done, Math.min(v.length, len - done));
+		}
+		update(null);
+		requests++;
+	}
+
+	/**
+	 * mix new entropy into the state
+	 */
+	private void reseed() {
+		update(Cryptography.randomBytes(SEEDSIZE));
+		requests = 0;
+		seeded = System.currentTimeMillis();
+	}
+
+	/**
+	 * HMAC_DRBG update, data may be null
+	 */
+	private void update(byte[] data) {
+		hmac(new byte[] { 0 }, data, k);
+		hmac(null, null, v);
+		if (data == null)
+			return;
+		hmac(new byte[] { 1 }, data, k);
+		hmac(null, null, v);
+	}
+
+	/**
+	 * out = HMAC(k, v || a || b), a and b may be null
+	 */
+	private void hmac(byte[] a, byte[] b, byte[] out) {
+		try {
+			mac.init(new SecretKeySpec(k, "HmacSHA256"));
+			mac.update(v);
+			if (a != null)
+				mac.update(a);
+			if (b != null)
+				mac.update(b);
+			mac.doFinal(out, 0);
+		} catch (InvalidKeyException | ShortBufferException e) {
+			throw new IllegalStateException(e); //k is always a valid HMAC key and out always fits
+		}
+	}
+}
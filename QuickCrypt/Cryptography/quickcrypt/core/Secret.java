@@ -1,8 +1,18 @@
 package quickcrypt.core;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.Map;
 
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
 /**
  * Represents a shared secret
  * @author Adam Spiegel
@@ -12,6 +22,9 @@ public class Secret{
 	String label;
 	byte[] bytelabel;
 	byte[] key;
+	SecretKeySpec aes128, aes256; //AES-CBC, built once, so ciphers can skip expanding the key for every message
+	SecretKeySpec gcm128, gcm256, chacha; //derived for each authenticated algorithm, never the same key as another mode
+	private static final byte[] STREAMINFO = "STREAM".getBytes(StandardCharsets.US_ASCII); //separates stream keys from other derived keys
 	
 	/**
 	 * Creates a Secret from a label and an encoded key or, if load is null, key is treated as a password to be hashed
@@ -48,6 +61,7 @@ public class Secret{
 		}
 		
 		if(this.key.length<32)throw new QCError("Invalid key size"); //input was not 32 bytes or higher
+		makeKeySpecs();
 	}
 	
 	/**
@@ -68,6 +82,110 @@ public class Secret{
 		if(label.length()==0||label.length()>50)throw new QCError("label too large");
 		
 		bytelabel = label.getBytes(StandardCharsets.UTF_8);
+		makeKeySpecs();
+	}
+	
+	/**
+	 * chop key to the sizes AES-CBC uses, authenticated algorithms each get their own key
+	 * HMAC-SHA256(key, type) so a weakness or repeated nonce in one mode tells nothing about another
+	 * @throws QCError if HMAC-SHA256 is missing
+	 */
+	private void makeKeySpecs() throws QCError
+	{
+		aes256 = new SecretKeySpec(key, 0, 32, "AES");
+		aes128 = new SecretKeySpec(key, 0, 16, "AES");
+		gcm256 = new SecretKeySpec(subkey("AG5"), 0, 32, "AES");
+		gcm128 = new SecretKeySpec(subkey("AG4"), 0, 16, "AES");
+		chacha = new SecretKeySpec(subkey("CP2"), 0, 32, "ChaCha20");
+	}
+	
+	/**
+	 * @param type algorithm code the key is for
+	 * @return 32 bytes only used by type
+	 */
+	private byte[] subkey(String type) throws QCError
+	{
+		return Cryptography.HMACSHA256(key, type.getBytes(StandardCharsets.US_ASCII));
+	}
+	
+	/**
+	 * @param type encryption type such as "AS5"
+	 * @return key spec for this type
+	 * @throws QCError if type is unknown
+	 */
+	SecretKeySpec keySpec(String type) throws QCError
+	{
+		if(type.equals("AS5"))return aes256; //AES-256-CBC
+		if(type.equals("AS4"))return aes128; //AES-128-CBC
+		if(type.equals("AG5"))return gcm256; //AES-256-GCM
+		if(type.equals("AG4"))return gcm128; //AES-128-GCM
+		if(type.equals("CP2"))return chacha; //ChaCha20-Poly1305
+		throw new QCError("Unknown Symetric algorithm, "+type);
+	}
+	
+	/**
+	 * @param type encryption type
+	 * @return true if type is authenticated AES-GCM, false for AES-CBC
+	 */
+	static boolean isGCM(String type)
+	{
+		return type.equals("AG4")||type.equals("AG5");
+	}
+	
+	/**
+	 * @param type encryption type
+	 * @return true if type authenticates messages (AES-GCM or ChaCha20-Poly1305)
+	 */
+	static boolean isAEAD(String type)
+	{
+		return isGCM(type)||type.equals("CP2");
+	}
+	
+	/**
+	 * @param type encryption type
+	 * @return true if type is a known algorithm code
+	 */
+	static boolean isAlgorithm(String type)
+	{
+		return isAEAD(type)||type.equals("AS4")||type.equals("AS5");
+	}
+	
+	/**
+	 * @param type encryption type
+	 * @return true if type is a known algorithm this java can encrypt with, ChaCha20-Poly1305 needs java 11
+	 */
+	static boolean isAvailable(String type)
+	{
+		return isAlgorithm(type)&&(!type.equals("CP2")||Cryptography.hasChaCha20());
+	}
+	
+	/**
+	 * Encrypt with an authenticated type
+	 * @return encrypted bytes followed by the tag
+	 */
+	static byte[] seal(String type, SecretKeySpec key, byte[] nonce, byte[] in, int off, int len, byte[]... aad) throws QCError
+	{
+		if(isGCM(type))return Cryptography.encryptGCM(in,off,len,key,nonce,aad);
+		return Cryptography.encryptChaCha20(in,off,len,key,nonce,aad);
+	}
+	
+	/**
+	 * Decrypt and check bytes from seal()
+	 * @return decrypted bytes
+	 */
+	static byte[] open(String type, SecretKeySpec key, byte[] nonce, int nonceOff, byte[] in, int off, int len, byte[]... aad) throws QCError
+	{
+		if(isGCM(type))return Cryptography.decryptGCM(in,off,len,key,nonce,nonceOff,aad);
+		return Cryptography.decryptChaCha20(in,off,len,key,nonce,nonceOff,aad);
+	}
+	
+	/**
+	 * @param type encryption type
+	 * @return size of the iv or nonce stored with each message
+	 */
+	static int ivSize(String type)
+	{
+		return isAEAD(type) ? Cryptography.NONCE : 16;
 	}
 
 	/**
@@ -91,37 +209,63 @@ public class Secret{
 	/**
 	 * Encrypt any data with AES.
 	 * @param input data to encrypt
+	 * @param type algorithm code, "AS4"/"AS5" for AES-128/256-CBC, "AG4"/"AG5" for AES-128/256-GCM
+	 *  or "CP2" for ChaCha20-Poly1305
 	 * @return encrypted data
 	 * @throws QCError something went wrong with encryption
 	 */
 	public byte[] encrypt(byte[] input, String type) throws QCError
 	{
-		//chop key to 32 bytes
-		byte[] k, iv, data;
+		return encrypt(input, type, (byte[]) null);
+	}
+	
+	/**
+	 * Encrypt any data with AES or ChaCha20, authenticated types also check aad, the type and the label
+	 * @param input data to encrypt
+	 * @param type algorithm code
+	 * @param aad data sent separately that decryption must be given unchanged, ignored by CBC types (may be null)
+	 * @return encrypted data
+	 * @throws QCError something went wrong with encryption
+	 */
+	public byte[] encrypt(byte[] input, String type, byte[] aad) throws QCError
+	{
+		return encryptWith(input, type, aad, IVGenerator.nextIV(ivSize(type)));
+	}
+	
+	/**
+	 * Encrypt many messages with AES, making all their ivs at once
+	 * @param inputs data to encrypt
+	 * @return encrypted data, in the same order
+	 * @throws QCError something went wrong with encryption
+	 */
+	public byte[][] encrypt(byte[][] inputs, String type) throws QCError
+	{
+		byte[][] ivs = IVGenerator.nextIVs(inputs.length, ivSize(type));
+		byte[][] out = new byte[inputs.length][];
+		for(int x=0;x<inputs.length;x++)
+			out[x] = encryptWith(inputs[x], type, null, ivs[x]);
+		return out;
+	}
+	
+	private byte[] encryptWith(byte[] input, String type, byte[] aad, byte[] iv) throws QCError
+	{
+		SecretKeySpec k = keySpec(type);
 		
-		if(type.equals("AS5")) //AES-256
-		{
-			k = new byte[32];
-			iv = Cryptography.randomBytes(16); //get iv
-		}
-		else if(type.equals("AS4")) //AES-128
-		{
-			k = new byte[16];
-			iv = Cryptography.randomBytes(16); //get iv
-		}
-		else throw new QCError("Unknown Symetric algorithm, "+type);
+		//format header
+		byte[] head = new byte[4+bytelabel.length];
+		head[0] = (byte)type.charAt(0); head[1] = (byte)type.charAt(1);head[2] = (byte)type.charAt(2); //encryption type
+		head[3] = (byte) bytelabel.length;
+		System.arraycopy(bytelabel,0,head,4,bytelabel.length); ///store secret label
 		
-		System.arraycopy(key,0,k,0,k.length);
-		data = Cryptography.encryptAES(input,k,iv); ///actual encryption
+		byte[] data; ///actual encryption
+		if(isAEAD(type))data = seal(type,k,iv,input,0,input.length,head,aad);
+		else data = Cryptography.encryptAES(input,k,iv);
 		
 		//format output
-		byte[] out = new byte[4+bytelabel.length+iv.length+data.length];
-		out[0] = (byte)type.charAt(0); out[1] = (byte)type.charAt(1);out[2] = (byte)type.charAt(2); //encryption type
-		out[3] = (byte) bytelabel.length;
-		
-		System.arraycopy(bytelabel,0,out,4,bytelabel.length); ///store secret label
-		System.arraycopy(iv, 0, out, 4+bytelabel.length, iv.length); //store iv
-		System.arraycopy(data,0,out,4+bytelabel.length+iv.length,data.length); //actual encrypted text
+		byte[] out = new byte[head.length+iv.length+data.length];
+		System.arraycopy(head,0,out,0,head.length);
+		System.arraycopy(iv, 0, out, head.length, iv.length); //store iv
+		System.arraycopy(data,0,out,head.length+iv.length,data.length); //actual encrypted text
 		
 		return out;
 	}
@@ -134,6 +278,19 @@ public class Secret{
 	 * @throws QCError if data is invalid or some other problem encrypting
 	 */
 	public static byte[] decrypt(byte[] input, Map<String, Secret> secretsList) throws QCError
+	{
+		return decrypt(input, secretsList, null);
+	}
+	
+	/**
+	 * Decrypt data that was encrypted with AES
+	 * @param input data to decrypt
+	 * @param secretsList list of possible secrets
+	 * @param aad same aad given to encrypt, ignored by CBC types (may be null)
+	 * @return decrypted data
+	 * @throws QCError if data is invalid, was changed or some other problem encrypting
+	 */
+	public static byte[] decrypt(byte[] input, Map<String, Secret> secretsList, byte[] aad) throws QCError
 	{
 
 		int labelsize = BinaryEncoder.byteToUnsignedInt(input[3]);
@@ -149,31 +306,108 @@ public class Secret{
 		Secret secret = secretsList.get(searchlabel);
 		if(secret==null)throw new QCError("Unknown secret needed for decryption; label=\""+searchlabel+"\"");
 		
-		//chop new key to 32 bytes
-		byte[] key, iv;
+		//get prebuilt key
+		String type = new String(input,0,3,StandardCharsets.US_ASCII);
+		SecretKeySpec key = secret.keySpec(type);
 		
-		if(input[0]=='A'&&input[1]=='S'&&input[2]=='5')
-		{
-			key = new byte[32];
-			iv = new byte[16];
-		}
-		else if(input[0]=='A'&&input[1]=='S'&&input[2]=='4')
+		///iv and encrypted data are read in place
+		int ivStart = 4+searchlabelb.length;
+		int dataStart = ivStart+ivSize(type);
+		if(dataStart>input.length)throw new QCError("Shared Secret Header too small");
+		
+		if(isAEAD(type))
+			return open(type, key, input, ivStart, input, dataStart, input.length-dataStart, Arrays.copyOf(input,ivStart), aad);
+		
+		IvParameterSpec iv = new IvParameterSpec(input,ivStart,16);
+		return Cryptography.decryptAES(input, dataStart, input.length-dataStart, key, iv); //decrypt
+	}
+
+	/**
+	 * Wrap a stream so everything written to it is encrypted in segments, using little memory for any size of data.
+	 * Starts with the same type and label as encrypt(), followed by a random salt, a nonce prefix and the segment size.
+	 * Segments are encrypted with a key derived from the salt, so nonces never need to be unique across streams
+	 * @param out stream to write encrypted bytes to, closed when the returned stream is closed
+	 * @param type authenticated algorithm code, "AG4", "AG5" or "CP2"
+	 * @param aad data sent separately that decryption must be given unchanged (may be null)
+	 * @return stream to write plain bytes to, must be closed to finish encrypting
+	 * @throws QCError if type does not authenticate
+	 * @throws IOException if out fails
+	 * @see AEADOutputStream
+	 */
+	public OutputStream encryptStream(OutputStream out, String type, byte[] aad) throws QCError, IOException
+	{
+		if(!isAEAD(type))throw new QCError("Streams need an authenticated algorithm, not "+type);
+		SecretKeySpec k = keySpec(type);
+		
+		//format header
+		byte[] head = new byte[4+bytelabel.length+AEADOutputStream.SALT+AEADOutputStream.NONCEPREFIX+1];
+		head[0] = (byte)type.charAt(0); head[1] = (byte)type.charAt(1);head[2] = (byte)type.charAt(2); //encryption type
+		head[3] = (byte) bytelabel.length;
+		System.arraycopy(bytelabel,0,head,4,bytelabel.length); ///store secret label
+		System.arraycopy(Cryptography.randomBytes(AEADOutputStream.SALT),0,head,4+bytelabel.length,AEADOutputStream.SALT); //new key for every stream
+		IVGenerator.nextBytes(head, 4+bytelabel.length+AEADOutputStream.SALT, AEADOutputStream.NONCEPREFIX); //start of every segment nonce
+		head[head.length-1] = AEADOutputStream.SEGMENTBITS;
+		
+		return new AEADOutputStream(out, type, streamKey(k, head, 4+bytelabel.length), head, aad);
+	}
+	
+	/**
+	 * Wrap a stream from encryptStream() so reading it decrypts one segment at a time.
+	 * Streams from a CBC algorithm were encrypted whole, so are read and decrypted whole
+	 * @param in stream of encrypted bytes, closed when the returned stream is closed
+	 * @param secretsList list of possible secrets
+	 * @param aad same aad given to encrypt (may be null)
+	 * @return stream of decrypted bytes, reading throws an IOException if the data was changed
+	 * @throws QCError if the header is invalid or the secret is unknown
+	 * @throws IOException if in fails
+	 * @see AEADInputStream
+	 */
+	public static InputStream decryptStream(InputStream in, Map<String, Secret> secretsList, byte[] aad) throws QCError, IOException
+	{
+		DataInputStream data = new DataInputStream(in);
+		byte[] start = new byte[4];
+		data.readFully(start);
+		
+		int labelsize = BinaryEncoder.byteToUnsignedInt(start[3]);
+		String type = new String(start,0,3,StandardCharsets.US_ASCII);
+		if(labelsize==0)throw new QCError("Shared Secret Header too small");
+		
+		if(!isAEAD(type)) //one whole message
 		{
-			key = new byte[16];
-			iv = new byte[16];
+			ByteArrayOutputStream all = new ByteArrayOutputStream();
+			all.write(start);
+			byte[] buf = new byte[8192];
+			for(int read;(read = in.read(buf))!=-1;)
+				all.write(buf,0,read);
+			in.close();
+			return new ByteArrayInputStream(decrypt(all.toByteArray(), secretsList, aad));
 		}
-		else throw new QCError("Unknown Symetric algorithm: "+((char)input[0])+((char)input[1])+((char)input[2]));
 		
-		System.arraycopy(secret.key,0,key,0,key.length);
+		byte[] head = Arrays.copyOf(start, 4+labelsize+AEADOutputStream.SALT+AEADOutputStream.NONCEPREFIX+1);
+		data.readFully(head, 4, head.length-4);
 		
-		///get iv
-		System.arraycopy(input,4+searchlabelb.length,iv,0,iv.length);
+		//locate key if it exists using encoded label
+		String searchlabel = new String(head,4,labelsize,StandardCharsets.UTF_8);
+		Secret secret = secretsList.get(searchlabel);
+		if(secret==null)throw new QCError("Unknown secret needed for decryption; label=\""+searchlabel+"\"");
 		
-		//get encrypted data
-		byte[] data = new byte[input.length-(4+searchlabelb.length+iv.length)];
-		System.arraycopy(input,4+searchlabelb.length+iv.length,data,0,data.length);
+		int bits = head[head.length-1];
+		if(bits<AEADOutputStream.MINSEGMENTBITS||bits>AEADOutputStream.MAXSEGMENTBITS)throw new QCError("Invalid segment size");
 		
-		return Cryptography.decryptAES(data, key, iv); //decrypt
+		return new AEADInputStream(in, type, streamKey(secret.keySpec(type), head, 4+labelsize), head, aad);
+	}
+	
+	/**
+	 * @param key key for the stream's type
+	 * @param head stream header
+	 * @param saltStart index of the salt in head
+	 * @return key for this stream only, HMAC-SHA256(key, "STREAM" || salt) cut to the size of key
+	 */
+	private static SecretKeySpec streamKey(SecretKeySpec key, byte[] head, int saltStart) throws QCError
+	{
+		byte[] raw = key.getEncoded();
+		byte[] derived = Cryptography.HMACSHA256(raw, STREAMINFO, Arrays.copyOfRange(head, saltStart, saltStart+AEADOutputStream.SALT));
+		return new SecretKeySpec(derived, 0, raw.length, key.getAlgorithm());
 	}
 
 	public String exportAs(BinaryEncoder enc, String delim) {
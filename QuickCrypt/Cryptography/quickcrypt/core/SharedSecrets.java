@@ -1,4 +1,7 @@
 package quickcrypt.core;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
@@ -13,6 +16,13 @@ import java.util.Set;
  * @author Adam Spiegel
  */
 public class SharedSecrets extends Encryptor {
+	
+	final static int BENCHSIZE = 16384; //bytes of each benchmark message
+	final static int BENCHMESSAGES = 8; //messages timed each round
+	final static int BENCHROUNDS = 12; //rounds, the first are slowed by the JIT so the fastest is kept
+	
+	private static String recommended; //result of the benchmark
+	
 	Map<String,Secret> allSecrets;
 	Secret currentSecret;
 	
@@ -47,6 +57,44 @@ public class SharedSecrets extends Encryptor {
 		return Secret.decrypt(in, allSecrets);
 	}
 	
+	/**
+	 * Wrapper for encrypting with currently selected secret, authenticating aad with GCM algorithms
+	 */
+	@Override
+	public byte[] encrypt(byte[] in, byte[] aad) throws QCError
+	{
+		return currentSecret.encrypt(in,symtype,aad);
+	}
+	
+	/**
+	 * Wrapper for decrypting with the secret and algorithm named in the input
+	 */
+	@Override
+	public byte[] decrypt(byte[] in, byte[] aad) throws QCError
+	{
+		return Secret.decrypt(in, allSecrets, aad);
+	}
+	
+	/**
+	 * Encrypt a stream in segments with the currently selected secret. CBC can not be encrypted in segments
+	 * and would need the whole stream in memory, so when a CBC algorithm is selected the stream uses
+	 * recommendedAlgorithmCode() instead, which is named in the stream header for decryption
+	 */
+	@Override
+	public OutputStream encryptStream(OutputStream out, byte[] aad) throws QCError, IOException
+	{
+		return currentSecret.encryptStream(out,Secret.isAEAD(symtype)?symtype:recommendedAlgorithmCode(),aad);
+	}
+	
+	/**
+	 * Decrypt a stream with the secret and algorithm named at its start, a CBC stream is read whole into memory
+	 */
+	@Override
+	public InputStream decryptStream(InputStream in, byte[] aad) throws QCError, IOException
+	{
+		return Secret.decryptStream(in, allSecrets, aad);
+	}
+	
 	/**
 	 * Change currently selected secret
 	 * @param label unique label to search for
@@ -126,17 +174,59 @@ public class SharedSecrets extends Encryptor {
 	
 	/**
 	 * Sets code for encryption algorithm to use when encrypting
-	 * @param code 3 character ASCII code referencing algorithm e.x. "AS5" for AES-256 and "AS4" for AES-128
+	 * @param code 3 character ASCII code referencing algorithm e.x. "AS5" for AES-256 and "AS4" for AES-128,
+	 *  "AG5" and "AG4" for the same with GCM, which also detects changed messages and wrong keys,
+	 *  and "CP2" for ChaCha20-Poly1305 which does the same and is faster on machines without AES instructions (java 11+).
+	 *  Unknown codes and codes this java can not encrypt with are ignored
 	 */
 	public void setSymetricAlgorithmCode(String code)
 	{
-		symtype = code;
+		if(Secret.isAvailable(code))symtype = code;
 	}
 	
 	public String getSymetricAlgorithmCode()
 	{
 		return symtype;
 	}
+	
+	/**
+	 * Times AES-256-GCM and ChaCha20-Poly1305 on this machine and picks the faster authenticated algorithm.
+	 * The benchmark runs only the first time and takes a fraction of a second, so call it early off the UI thread
+	 * @return "AG5" or "CP2" (only if this java has ChaCha20-Poly1305)
+	 */
+	public static synchronized String recommendedAlgorithmCode()
+	{
+		if(recommended!=null)return recommended;
+		
+		recommended = "AG5";
+		if(!Cryptography.hasChaCha20())return recommended;
+		
+		try {
+			Secret s = new Secret("BENCHMARK",null,null); //random key
+			byte[] msg = new byte[BENCHSIZE];
+			long gcm = Long.MAX_VALUE, chacha = Long.MAX_VALUE;
+			
+			for(int x=0;x<BENCHROUNDS;x++) //take turns so neither gets an unfair warm up
+			{
+				gcm = Math.min(gcm, time(s,"AG5",msg));
+				chacha = Math.min(chacha, time(s,"CP2",msg));
+			}
+			if(chacha<gcm)recommended = "CP2";
+		} catch (QCError e) {} //keep AES-GCM
+		
+		return recommended;
+	}
+	
+	/**
+	 * @return nanoseconds to encrypt BENCHMESSAGES messages
+	 */
+	private static long time(Secret s, String type, byte[] msg) throws QCError
+	{
+		long start = System.nanoTime();
+		for(int x=0;x<BENCHMESSAGES;x++)
+			s.encrypt(msg,type);
+		return System.nanoTime()-start;
+	}
 
 	/**
 	 * Save secrets and context to a PrintStream
@@ -178,7 +268,7 @@ public class SharedSecrets extends Encryptor {
 				switch(setting)
 				{
 				case "Algorithm":
-					symtype = line;
+					if(Secret.isAvailable(line))symtype = line; //ignore codes from newer versions or missing from this java
 					break;
 				}
 			}
@@ -0,0 +1,464 @@
+package quickcrypt.core;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Binary encoder built from any user defined character set of any size
+ * <p>
+ * Bytes are converted in blocks of up to 8 bytes to a fixed number of symbols with base N (radix) conversion,
+ * where N is the number of characters in the set. The block size with the fewest characters per byte is chosen automatically.
+ * A partial last block uses fewer symbols, so the set should never need a special end character.
+ * When partial blocks can not all be told apart by their number of symbols (usually sets of 256 or more characters),
+ * the partial block is padded to a full block and followed by one symbol holding its length instead.
+ * This allows character sets that are not a power of two, such as sets that survive a specific chat app or text field
+ * <p>
+ * The set may hold every character of Context.frontHead and Context.backHead (all 94 printable ASCII characters for example),
+ * Context escapes any header the output happens to contain with a character outside the set
+ *
+ * @author Adam Spiegel
+ */
+
+public class AlphabetEncoder extends BinaryEncoder {
+
+	final static int MAXBLOCK = 8; //largest block in bytes, must fit in a long
+	final static int MAXTABLE = 1<<17; //largest range of code points stored in a decode table, bigger ranges are searched
+
+	private char base64Id;
+	private String shortName;
+
+	private int radix; //number of symbols
+	private int[] symbols; //value -> code point
+	private int width; //UTF-16 chars per symbol, 1 or 2
+
+	private int[] table; //code point - tableStart -> value or -1, null if the set is too spread out
+	private int tableStart;
+	private int[] sorted; //symbols sorted by code point, used when table is null
+	private int[] sortedValues; //values of sorted
+
+	private int blockBytes; //bytes in a full block
+	private int blockSymbols; //symbols for a full block
+	private int[] tailSymbols; //bytes in a partial block -> symbols used
+	private int[] tailBytes; //symbols in a partial block -> bytes, -1 if no partial block has that many symbols
+	private boolean lengthSymbol; //partial block is padded to a full block and followed by a symbol holding its length
+
+	/**
+	 * Create an encoder from a list of characters
+	 * @param base64Id unique char 0-9, A-Z, a-z, -, or _ used to register the encoder in a Context
+	 * @param shortName name of the encoder
+	 * @param codePoints every code point in the set, in order of value
+	 * @throws QCError if the set is too small, has duplicates or surrogates, or mixes BMP and non-BMP characters
+	 */
+	public AlphabetEncoder(char base64Id, String shortName, int[] codePoints) throws QCError
+	{
+		if(Base64URL.fromChar(base64Id)==-1)throw new QCError("base64Id is not a base 64 character");
+		if(codePoints.length<2)throw new QCError("Character set needs at least 2 characters");
+
+		this.base64Id = base64Id;
+		this.shortName = shortName;
+		radix = codePoints.length;
+		symbols = codePoints.clone();
+		width = Character.charCount(symbols[0]);
+
+		for(int cp : symbols)
+		{
+			if(!Character.isValidCodePoint(cp)||(cp>=0xD800&&cp<0xE000))throw new QCError("Invalid character in set: "+cp);
+			if(Character.charCount(cp)!=width)throw new QCError("Character set can not mix BMP and non-BMP characters");
+		}
+
+		buildDecodeTable();
+
+		chooseBlock();
+	}
+
+	/**
+	 * Create an encoder from the characters in a String
+	 * @param base64Id unique char 0-9, A-Z, a-z, -, or _ used to register the encoder in a Context
+	 * @param shortName name of the encoder
+	 * @param alphabet every character in the set, in order of value
+	 * @throws QCError if the set is invalid
+	 */
+	public AlphabetEncoder(char base64Id, String shortName, String alphabet) throws QCError
+	{
+		this(base64Id, shortName, codePoints(alphabet));
+	}
+
+	private static int[] codePoints(String s)
+	{
+		int[] out = new int[s.codePointCount(0, s.length())];
+		for(int x=0,c=0;x<s.length();x=s.offsetByCodePoints(x, 1))
+			out[c++] = s.codePointAt(x);
+		return out;
+	}
+
+	/**
+	 * Create an encoder from ranges of code points
+	 * @param base64Id unique char 0-9, A-Z, a-z, -, or _ used to register the encoder in a Context
+	 * @param shortName name of the encoder
+	 * @param ranges pairs of first and last code point (inclusive) of each range, in order of value
+	 * @return new encoder
+	 * @throws QCError if the set is invalid
+	 */
+	public static AlphabetEncoder fromRanges(char base64Id, String shortName, int... ranges) throws QCError
+	{
+		if(ranges.length%2!=0)throw new QCError("Ranges need a first and last code point");
+
+		int size = 0;
+		for(int x=0;x<ranges.length;x+=2)
+		{
+			if(ranges[x]>ranges[x+1])throw new QCError("Range starts after it ends");
+			size += ranges[x+1]-ranges[x]+1;
+		}
+
+		int[] codePoints = new int[size];
+		for(int x=0,c=0;x<ranges.length;x+=2)
+			for(int cp=ranges[x];cp<=ranges[x+1];cp++)
+				codePoints[c++] = cp;
+
+		return new AlphabetEncoder(base64Id, shortName, codePoints);
+	}
+
+	/**
+	 * Creates the code point -> value lookup
+	 */
+	private void buildDecodeTable() throws QCError
+	{
+		int min = Integer.MAX_VALUE, max = 0;
+		for(int cp : symbols)
+		{
+			if(cp<min)min = cp;
+			if(cp>max)max = cp;
+		}
+
+		if(max-min<MAXTABLE) //small enough for a direct table
+		{
+			tableStart = min;
+			table = new int[max-min+1];
+			Arrays.fill(table, -1);
+			for(int v=0;v<radix;v++)
+			{
+				if(table[symbols[v]-min]!=-1)throw new QCError("Duplicate character in set: "+symbols[v]);
+				table[symbols[v]-min] = v;
+			}
+		}
+		else //binary search sorted code points
+		{
+			long[] pairs = new long[radix];
+			for(int v=0;v<radix;v++)
+				pairs[v] = (long) symbols[v]<<32 | v;
+			Arrays.sort(pairs);
+
+			sorted = new int[radix];
+			sortedValues = new int[radix];
+			for(int x=0;x<radix;x++)
+			{
+				sorted[x] = (int) (pairs[x]>>>32);
+				sortedValues[x] = (int) pairs[x];
+				if(x>0&&sorted[x]==sorted[x-1])throw new QCError("Duplicate character in set: "+sorted[x]);
+			}
+		}
+	}
+
+	/**
+	 * Picks the block size with the fewest symbols per byte.
+	 * Partial blocks are told apart by using a different number of symbols for each size, with extra symbols when needed.
+	 * If that does not fit in less than a full block, the block can still be used with a length symbol after the
+	 * padded partial block. Counted partial blocks are preferred when both ways use as few symbols per byte
+	 */
+	private void chooseBlock()
+	{
+		BigInteger n = BigInteger.valueOf(radix);
+		int[] need = new int[MAXBLOCK+1]; //bytes -> symbols needed
+		for(int b=1;b<=MAXBLOCK;b++)
+		{
+			BigInteger max = BigInteger.ONE.shiftLeft(8*b);
+			BigInteger pow = BigInteger.ONE;
+			while(pow.compareTo(max)<0)
+			{
+				pow = pow.multiply(n);
+				need[b]++;
+			}
+		}
+
+		int[] tail = new int[MAXBLOCK]; //partial block bytes -> symbols used
+		for(int b=1;b<MAXBLOCK;b++)
+			tail[b] = Math.max(need[b], tail[b-1]+1);
+
+		blockBytes = 1;
+		boolean counted = true;
+		for(int b=2;b<=MAXBLOCK;b++)
+		{
+			boolean fits = tail[b-1]<need[b]; //partial blocks fit
+			if(!fits&&(need[b]<2||radix<b))continue; //length symbol must not look like a full block and must hold b-1
+
+			int cmp = need[b]*blockBytes - need[blockBytes]*b;
+			if(cmp<0||(cmp==0&&fits&&!counted)) //fewer symbols per byte
+			{
+				blockBytes = b;
+				counted = fits;
+			}
+		}
+		blockSymbols = need[blockBytes];
+		lengthSymbol = !counted;
+
+		tailSymbols = Arrays.copyOf(tail, blockBytes);
+		tailBytes = new int[blockSymbols];
+		Arrays.fill(tailBytes, -1);
+		if(lengthSymbol)
+		{
+			for(int b=1;b<blockBytes;b++)
+				tailSymbols[b] = blockSymbols+1;
+			tailBytes[0] = 0;
+		}
+		else for(int b=0;b<blockBytes;b++)
+			tailBytes[tail[b]] = b;
+	}
+
+	/**
+	 * @param cp code point to look up
+	 * @return value of cp, -1 if not in the set
+	 */
+	private int valueOf(int cp)
+	{
+		if(table!=null)
+		{
+			cp -= tableStart;
+			return cp>=0&&cp<table.length?table[cp]:-1;
+		}
+
+		int idx = Arrays.binarySearch(sorted, cp);
+		return idx<0?-1:sortedValues[idx];
+	}
+
+	/**
+	 * divide an unsigned 64 bit number by a small positive number
+	 */
+	private static long divide(long v, int d)
+	{
+		if(v>=0)return v/d;
+		long q = ((v>>>1)/d)<<1;
+		return v-q*d>=d||v-q*d<0?q+1:q;
+	}
+
+	/**
+	 * Convert from raw bytes to encoded string
+	 * @param in bytes to convert
+	 * @return String with output data
+	 */
+	@Override
+	public String to(byte[] in) {
+		char[] out = new char[encodedLength(in.length)]; //exact size of output
+		int[] digits = new int[blockSymbols];
+		int c = 0;
+
+		for(int x=0;x<in.length;x+=blockBytes)
+		{
+			int bytes = Math.min(blockBytes, in.length-x);
+			int num = bytes==blockBytes||lengthSymbol?blockSymbols:tailSymbols[bytes]; //partial last block uses fewer symbols
+
+			long v = 0;
+			for(int y=0;y<bytes;y++)
+				v = v<<8 | (in[x+y]&0xFF);
+			if(num==blockSymbols)
+				v <<= 8*(blockBytes-bytes); //padded partial block
+
+			for(int y=num-1;y>=0;y--) //base N digits, least significant last
+			{
+				long q = divide(v, radix);
+				digits[y] = (int) (v-q*radix);
+				v = q;
+			}
+
+			for(int y=0;y<num;y++)
+			{
+				if(width==1)out[c++] = (char) symbols[digits[y]];
+				else c += Character.toChars(symbols[digits[y]], out, c);
+			}
+
+			if(bytes<blockBytes&&lengthSymbol) //length of the padded block
+			{
+				if(width==1)out[c++] = (char) symbols[bytes];
+				else c += Character.toChars(symbols[bytes], out, c);
+			}
+		}
+
+		return new String(out);
+	}
+
+	/**
+	 * Convert from encoded String to raw bytes, ignores invalid characters
+	 * @param in String to decode
+	 * @return original bytes that were decode
+	 */
+	@Override
+	public byte[] from(String in) {
+		int[] values = new int[in.length()/width];
+		int count = 0;
+
+		for(int x=0;x<in.length();)
+		{
+			int cp = in.codePointAt(x);
+			x += Character.charCount(cp);
+
+			int v = valueOf(cp);
+			if(v!=-1)values[count++] = v; //skip anything not in the set
+		}
+
+		return fromValues(values, count);
+	}
+
+	@Override
+	public byte[] fromStrict(String in) throws QCError
+	{
+		int[] values = new int[in.length()/width];
+		int count = 0;
+
+		for(int x=0;x<in.length();)
+		{
+			int cp = in.codePointAt(x);
+			x += Character.charCount(cp);
+
+			int v = valueOf(cp);
+			if(v==-1)throw new QCError("Invalid character for "+shortName+" at "+x);
+			values[count++] = v;
+		}
+		if(lengthSymbol?padded(values, count)==-1:tailBytes[count%blockSymbols]==-1)throw new QCError("Invalid length for "+shortName);
+
+		return fromValues(values, count);
+	}
+
+	/**
+	 * decode symbol values, a partial last block of an impossible length is ignored
+	 * @param values values of the symbols
+	 * @param count number of values to use
+	 * @return decoded bytes
+	 */
+	private byte[] fromValues(int[] values, int count)
+	{
+		if(lengthSymbol)
+		{
+			int tail = padded(values, count);
+			int full = count/blockSymbols - (tail>0?1:0);
+			byte[] out = new byte[full*blockBytes + Math.max(tail, 0)];
+
+			int b = 0;
+			for(int x=0;x<full*blockSymbols;x+=blockSymbols)
+				b = putBlock(values, x, blockSymbols, out, b, blockBytes);
+
+			if(tail>0)
+			{
+				byte[] last = new byte[blockBytes];
+				putBlock(values, full*blockSymbols, blockSymbols, last, 0, blockBytes);
+				System.arraycopy(last, 0, out, b, tail);
+			}
+			return out;
+		}
+
+		int rem = count%blockSymbols;
+		int tail = tailBytes[rem]==-1?0:tailBytes[rem];
+		byte[] out = new byte[(count/blockSymbols)*blockBytes + tail]; //exact size of output
+		int b = 0;
+
+		for(int x=0;x<count-rem;x+=blockSymbols)
+			b = putBlock(values, x, blockSymbols, out, b, blockBytes);
+
+		if(tail>0)
+			putBlock(values, count-rem, rem, out, b, tail);
+
+		return out;
+	}
+
+	/**
+	 * @return bytes in the padded partial block ended by a length symbol, 0 if there is none or -1 if the
+	 *         symbols after the last full block are not a valid length
+	 */
+	private int padded(int[] values, int count)
+	{
+		int rem = count%blockSymbols;
+		if(rem==0)return 0;
+		if(rem==1&&count>1&&values[count-1]>0&&values[count-1]<blockBytes)return values[count-1];
+		return -1;
+	}
+
+	/**
+	 * convert num base N digits into bytes
+	 * @return position after the written bytes
+	 */
+	private int putBlock(int[] values, int x, int num, byte[] out, int b, int bytes)
+	{
+		long v = 0;
+		for(int y=0;y<num;y++)
+			v = v*radix + values[x+y]; //invalid combinations overflow and are cut to the block size
+
+		for(int y=bytes-1;y>=0;y--)
+		{
+			out[b+y] = (byte) v;
+			v >>>= 8;
+		}
+		return b+bytes;
+	}
+
+	@Override
+	public int encodedLength(int bytes) {
+		return ((bytes/blockBytes)*blockSymbols + tailSymbols[bytes%blockBytes])*width;
+	}
+
+	@Override
+	public int maxDecodedLength(int chars) {
+		int count = chars/width, rem = count%blockSymbols;
+		if(lengthSymbol)return (count/blockSymbols)*blockBytes; //a length symbol only ever shortens the block before it
+		while(tailBytes[rem]==-1)rem--; //largest partial block that fits
+		return (count/blockSymbols)*blockBytes + tailBytes[rem];
+	}
+
+	@Override
+	public int groupBytes() {
+		return blockBytes;
+	}
+
+	@Override
+	public int groupSymbols() {
+		return blockSymbols;
+	}
+
+	@Override
+	protected boolean isSymbol(int codePoint) {
+		return valueOf(codePoint)!=-1;
+	}
+
+	@Override
+	protected int heldSymbols() {
+		return lengthSymbol?blockSymbols+1:1; //a length symbol changes the whole block before it
+	}
+
+	/**
+	 * @return number of characters in the set
+	 */
+	public int getRadix()
+	{
+		return radix;
+	}
+
+	@Override
+	public String fullName() {
+		return shortName+" (Base "+radix+", "+blockBytes+" bytes to "+blockSymbols+" characters)";
+	}
+
+	@Override
+	public String shortName() {
+		return shortName;
+	}
+
+	@Override
+	public char base64Id() {
+		return base64Id;
+	}
+
+	@Override
+	public String description() {
+		return "This Encoder uses a custom set of "+radix+" characters. Every "+blockBytes+" bytes are stored in "+blockSymbols+" characters. "
+				+"Without encryption or compression, This encoder makes text that is approximately "
+				+String.format("%.3f", 2.0*blockSymbols*width/blockBytes)+" times the input text + 16 characters for the header and footer. "
+				+"It will work in any environment that accepts every character in its set.";
+	}
+}
@@ -0,0 +1,267 @@
+package quickcrypt.core;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Base-32768 Binary encoder storing 15 bits in every character using CJK ideographs and Hangul syllables on the Basic Multilingual Plane
+ *
+ * @author Adam Spiegel
+ */
+
+public class Base32768 extends BinaryEncoder {
+
+	///main set (15 bits per char) is made of 3 ranges, 32768 characters in total
+	///0x4E00-0x9FA5 CJK Unified Ideographs, 0xAC00-0xD7A3 Hangul Syllables, 0x3400-0x36B5 CJK Unified Ideographs Extension A
+	///when 7 or less bits are left at the end they are stored in one char from the tail set (7 bits per char)
+	///tail set = 0x36B6-0x3735 CJK Unified Ideographs Extension A
+	///unused bits of the last char are set to 1 and ignored when decoding, because they never make a full byte
+
+	private static final int[][] RANGES = {{0x4E00,0x9FA5},{0xAC00,0xD7A3},{0x3400,0x36B5}};
+	private static final char TAILSTART = 0x36B6;
+
+	private static final char[] ENCODE = new char[1<<15]; //value -> char from main set
+	private static final char[] DECODE = new char[1<<16]; //char -> 15 bit value, 7 bit value + TAILFLAG for the tail set, or INVALID
+	private static final char TAILFLAG = 0x8000;
+	private static final char INVALID = 0xFFFF;
+
+	static
+	{
+		Arrays.fill(DECODE, INVALID);
+
+		int v = 0;
+		for(int[] range : RANGES)
+			for(int c=range[0];c<=range[1];c++,v++)
+			{
+				ENCODE[v] = (char) c;
+				DECODE[c] = (char) v;
+			}
+
+		for(int x=0;x<128;x++)
+			DECODE[TAILSTART+x] = (char) (x|TAILFLAG);
+	}
+
+	/**
+	 * Convert from raw bytes to encoded string
+	 * @param in bytes to convert
+	 * @return String with output data
+	 */
+	@Override
+	public String to(byte[] in) {
+		char[] out = new char[encodedLength(in.length)]; //exact size of output
+		BitReader bits = new BitReader(in);
+		int c = 0;
+
+		while(bits.remaining()>=15) //15 bits -> 1 char
+			out[c++] = ENCODE[(int) bits.read(15)];
+
+		int rem = (int) bits.remaining();
+		if(rem>7) ///end case 1: 8-14 bits left, padded with 1s into a main set char
+			out[c++] = ENCODE[(int) (bits.read(rem)<<(15-rem) | ((1<<(15-rem))-1))];
+		else if(rem>0) ///end case 2: 1-7 bits left, padded with 1s into a tail set char
+			out[c++] = (char) (TAILSTART + (bits.read(rem)<<(7-rem) | ((1<<(7-rem))-1)));
+
+		return new String(out);
+	}
+
+	/**
+	 * Convert from encoded String to raw bytes, ignores invalid characters
+	 * @param in String to decode
+	 * @return original bytes that were decode
+	 */
+	@Override
+	public byte[] from(String in) {
+
+		if(isStrict(in))return decodeStrict(in);
+
+		int len = in.length(), regular = 0, last = -1;
+		for(int x=0;x<len;x++) //count 15 bit chars and find the last valid char
+		{
+			char c = in.charAt(x);
+			if(c<0x3400)continue; //whitespace, line breaks and other low chars
+			if(DECODE[c]!=INVALID)
+			{
+				if(DECODE[c]<TAILFLAG)regular++;
+				last = x;
+			}
+		}
+
+		//tail set char only counts at the very end
+		char tail = last!=-1&&DECODE[in.charAt(last)]>=TAILFLAG?in.charAt(last):0;
+
+		///skip invalid or wrongly placed characters
+		char[] symbols = new char[regular];
+		for(int x=0,s=0;s<regular;x++)
+			if(DECODE[in.charAt(x)]<TAILFLAG)symbols[s++] = in.charAt(x);
+
+		return fromSymbols(symbols, symbols.length, tail);
+	}
+
+	@Override
+	public byte[] fromStrict(String in) throws QCError
+	{
+		if(!isStrict(in))throw new QCError("Invalid Base 32768 text");
+		return decodeStrict(in);
+	}
+
+	/**
+	 * @return true if in only has main set chars, except for a tail set char at the very end
+	 */
+	private static boolean isStrict(String in)
+	{
+		int len = in.length();
+		if(len>0&&DECODE[in.charAt(len-1)]!=INVALID&&DECODE[in.charAt(len-1)]>=TAILFLAG)len--;
+
+		for(int x=0;x<len;x++)
+			if(DECODE[in.charAt(x)]>=TAILFLAG)return false; //invalid chars are above TAILFLAG too
+		return true;
+	}
+
+	/**
+	 * decode text already known to be strictly valid
+	 */
+	private static byte[] decodeStrict(String in)
+	{
+		char[] symbols = in.toCharArray();
+		int len = symbols.length;
+		if(len>0&&DECODE[symbols[len-1]]>=TAILFLAG)
+			return fromSymbols(symbols, len-1, symbols[len-1]);
+		return fromSymbols(symbols, len, (char) 0);
+	}
+
+	/**
+	 * decode main set chars that are all known to be valid
+	 * @param in main set chars
+	 * @param len number of chars in to use
+	 * @param tail tail set char from the end or 0 if there was none
+	 * @return decoded bytes
+	 */
+	private static byte[] fromSymbols(char[] in, int len, char tail)
+	{
+		byte[] out = new byte[(int) ((len*15L + (tail==0?0:7))/8)]; //exact size of output, leftover padding bits are ignored
+		BitWriter bits = new BitWriter(out);
+
+		for(int x=0;x<len;x++)
+			bits.write(15, DECODE[in[x]]);
+		if(tail!=0)
+			bits.write(7, DECODE[tail]);
+
+		return out;
+	}
+
+	@Override
+	public void encode(ByteBuffer src, CharBuffer dst)
+	{
+		if(dst.remaining()<encodedLength(src.remaining()))throw new BufferOverflowException();
+
+		long acc = 0; //bits that have not been written yet
+		int accBits = 0;
+		while(src.hasRemaining())
+		{
+			acc = acc<<8 | (src.get()&0xFF);
+			accBits += 8;
+			if(accBits>=15)
+			{
+				accBits -= 15;
+				dst.put(ENCODE[(int) (acc>>>accBits)&0x7FFF]);
+			}
+		}
+
+		if(accBits>7) ///end case 1
+			dst.put(ENCODE[(int) ((acc<<(15-accBits) | ((1<<(15-accBits))-1))&0x7FFF)]);
+		else if(accBits>0) ///end case 2
+			dst.put((char) (TAILSTART + ((acc<<(7-accBits) | ((1<<(7-accBits))-1))&0x7F)));
+	}
+
+	@Override
+	public void decode(CharBuffer src, ByteBuffer dst)
+	{
+		long acc = 0; //bits that have not been written yet
+		int accBits = 0;
+		int tail = -1; //tail set value, only used if no other valid char follows
+
+		while(src.hasRemaining())
+		{
+			char v = DECODE[src.get()];
+			if(v==INVALID)continue;
+
+			if(v>=TAILFLAG)
+			{
+				tail = v&0x7F;
+				continue;
+			}
+			tail = -1;
+
+			acc = acc<<15 | v;
+			accBits += 15;
+			while(accBits>=8)
+			{
+				accBits -= 8;
+				dst.put((byte) (acc>>>accBits));
+			}
+		}
+
+		if(tail!=-1&&accBits+7>=8) //tail completes one more byte
+			dst.put((byte) ((acc<<7 | tail)>>>(accBits+7-8)));
+	}
+
+	@Override
+	public int encodedLength(int bytes) {
+		return (int) ((bytes*8L+14)/15);
+	}
+
+	@Override
+	public int maxDecodedLength(int chars) {
+		return (int) ((chars*15L)/8);
+	}
+
+	@Override
+	public int groupBytes() {
+		return 15;
+	}
+
+	@Override
+	public int groupSymbols() {
+		return 8;
+	}
+
+	@Override
+	protected boolean isSymbol(int c) {
+		return c<0x10000&&DECODE[c]!=INVALID;
+	}
+
+	@Override
+	protected boolean isTailSymbol(int c) {
+		return DECODE[c]>=TAILFLAG; //only called for symbols
+	}
+
+	@Override
+	public String fullName() {
+		return "Base 32768 with CJK and Hangul Unicode BMP";
+	}
+
+	@Override
+	public String shortName() {
+		return "Base 32768";
+	}
+
+	@Override
+	public char base64Id() {
+		return 'B';
+	}
+
+	public String description()
+	{
+		return "This Encoder uses 32768 UNICODE characters from the \"CJK Unified Ideographs\", \"Hangul Syllables\" and \"CJK Unified Ideographs Extension A\" "
+                +"sections of the BMP as its character set, plus 128 more characters from \"CJK Unified Ideographs Extension A\" for the very end of the text. "
+                +"Each character holds 15 bits, so this encoder makes 20% fewer characters than CJK 4096. "
+                +"Without encryption or compression, This encoder makes text that is approximately 1.067 times the input text + 16 characters for the header and footer. "
+                +"This only uses characters from the BMP so it will work in environments that only allow BMP UNICODE as well as any other type of UNICODE environment. "
+                +"An ASCII only environment will not allow output from this encoder because ASCII does not support any of it's symbols."
+                +"\n\nDisclaimer: Because Chinese/Japanese/Korean symbols are used, text may contain a recognizable plain message. "
+				+"This is not the intent of the program or the programmer.";
+	}
+
+}
@@ -1,5 +1,10 @@
 package quickcrypt.core;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
 /**
  * Base-64 Encoder consistent with most URL Base64 implementations
  * Also contains static helper methods for single base64 characters
@@ -8,48 +13,201 @@ package quickcrypt.core;
  */
 public class Base64URL extends BinaryEncoder {
 	
+	private static final char[] ENCODE = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz-_".toCharArray(); //value -> char
+	private static final byte[] DECODE = new byte[256]; //char -> value, -1 if not base64
+	
+	static
+	{
+		Arrays.fill(DECODE, (byte) -1);
+		for(int x=0;x<ENCODE.length;x++)
+			DECODE[ENCODE[x]] = (byte) x;
+	}
+	
 	/**
 	 * converts bytes to a base-64 string
 	 * @param in Bytes to convert
 	 */
 	public String to(byte[] in)
 	{
-		StringBuilder out = new StringBuilder();
+		char[] out = new char[encodedLength(in.length)]; //exact size of output
+		int x = 0, c = 0;
 		
-		//cycle every 6 bits and add corresponding character
-		for(int x=0;x<in.length*8;x+=6)
-			out.append(toChar((int)getBits(in, x, x+6<=in.length*8?6:in.length*8-x)));
+		//every 3 bytes -> 4 chars
+		for(int end=in.length-2;x<end;x+=3)
+		{
+			int group = (in[x]&0xFF)<<16 | (in[x+1]&0xFF)<<8 | (in[x+2]&0xFF);
+			out[c++] = ENCODE[group>>>18];
+			out[c++] = ENCODE[(group>>>12)&63];
+			out[c++] = ENCODE[(group>>>6)&63];
+			out[c++] = ENCODE[group&63];
+		}
 		
-		return out.toString();
+		//remaining bits are stored in the last char without shifting them
+		if(in.length-x==1) //1 byte -> 6 bits + 2 bits
+		{
+			int group = in[x]&0xFF;
+			out[c++] = ENCODE[group>>>2];
+			out[c++] = ENCODE[group&3];
+		}
+		else if(in.length-x==2) //2 bytes -> 6 bits + 6 bits + 4 bits
+		{
+			int group = (in[x]&0xFF)<<8 | (in[x+1]&0xFF);
+			out[c++] = ENCODE[group>>>10];
+			out[c++] = ENCODE[(group>>>4)&63];
+			out[c++] = ENCODE[group&15];
+		}
+		
+		return new String(out);
 	}
 	
+	/**
+	 * converts a base-64 string back to bytes, ignores invalid characters
+	 * @param in String to decode
+	 */
 	public byte[] from(String in)
 	{
-		int x; //remove trailing invalid chars
-		for(x=in.length()-1;x>=0&&(fromChar(in.charAt(x))==-1||(x>0&&in.charAt(x-1)>0xD7FF&&in.charAt(x-1)<0xE000));x--);
-		if(x!=in.length()-1) in = in.substring(0, x+1);
+		if(isStrict(in))return fromSymbols(in.toCharArray());
+		
+		int len = in.length(), valid = 0;
+		for(int x=0;x<len;x++) //count base64 chars
+		{
+			char c = in.charAt(x);
+			if(c>' '&&fromChar(c)!=-1)valid++;
+		}
+		
+		//copy only base64 chars
+		char[] symbols = new char[valid];
+		for(int x=0,s=0;s<valid;x++)
+		{
+			char c = in.charAt(x);
+			if(c<=' ')continue; //whitespace or line break
+			if(fromChar(c)!=-1)symbols[s++] = c;
+		}
+		
+		return fromSymbols(symbols);
+	}
+	
+	@Override
+	public byte[] fromStrict(String in) throws QCError
+	{
+		if(!isStrict(in))throw new QCError("Invalid base 64 text");
+		return fromSymbols(in.toCharArray());
+	}
+	
+	/**
+	 * @return true if in only has base64 chars and a length to() could output
+	 */
+	private static boolean isStrict(String in)
+	{
+		if(in.length()%4==1)return false; //a single char in the last group holds no full byte
+		
+		for(int x=0;x<in.length();x++)
+		{
+			char c = in.charAt(x);
+			if(c>255||DECODE[c]==-1)return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * decode chars that are all known to be valid base64
+	 * @param in base64 chars
+	 * @return decoded bytes
+	 */
+	private static byte[] fromSymbols(char[] in)
+	{
+		byte[] out = new byte[(int) ((in.length*6L)/8)]; //exact size of output
+		int x = 0, b = 0;
+		
+		//every 4 chars -> 3 bytes
+		for(int end=in.length-3;x<end;x+=4)
+		{
+			int group = DECODE[in[x]]<<18 | DECODE[in[x+1]]<<12 | DECODE[in[x+2]]<<6 | DECODE[in[x+3]];
+			out[b++] = (byte) (group>>>16);
+			out[b++] = (byte) (group>>>8);
+			out[b++] = (byte) group;
+		}
+		
+		//last char only holds the remaining bits, a single remaining char holds no full byte
+		if(in.length-x==2)
+			out[b++] = (byte) (DECODE[in[x]]<<2 | (DECODE[in[x+1]]&3));
+		else if(in.length-x==3)
+		{
+			int group = DECODE[in[x]]<<10 | DECODE[in[x+1]]<<4 | (DECODE[in[x+2]]&15);
+			out[b++] = (byte) (group>>>8);
+			out[b++] = (byte) group;
+		}
+		
+		return out;
+	}
+	
+	@Override
+	public void encode(ByteBuffer src, CharBuffer dst)
+	{
+		if(dst.remaining()<encodedLength(src.remaining()))throw new BufferOverflowException();
 		
-		byte[] out = new byte[(in.length()*6)/8]; //get expected size of output based on input, could be shorter if invalid characters are found
-		out[(in.length()*6)/8 - 1] = 0;
-		int strpos = 0;
+		while(src.remaining()>=3)
+		{
+			int group = (src.get()&0xFF)<<16 | (src.get()&0xFF)<<8 | (src.get()&0xFF);
+			dst.put(ENCODE[group>>>18]);
+			dst.put(ENCODE[(group>>>12)&63]);
+			dst.put(ENCODE[(group>>>6)&63]);
+			dst.put(ENCODE[group&63]);
+		}
 		
-		for(x=0;x<out.length*8;x+=6) //parse output bytes until theoretical maximum
+		if(src.remaining()==1)
 		{
-			if(strpos>=in.length()) ///reached end of string before end of array this means characters were skipped and the array must be resized
+			int group = src.get()&0xFF;
+			dst.put(ENCODE[group>>>2]);
+			dst.put(ENCODE[group&3]);
+		}
+		else if(src.remaining()==2)
+		{
+			int group = (src.get()&0xFF)<<8 | (src.get()&0xFF);
+			dst.put(ENCODE[group>>>10]);
+			dst.put(ENCODE[(group>>>4)&63]);
+			dst.put(ENCODE[group&15]);
+		}
+	}
+	
+	@Override
+	public void decode(CharBuffer src, ByteBuffer dst)
+	{
+		int group = 0, count = 0; //values of base64 chars that have not been written yet
+		while(src.hasRemaining())
+		{
+			int value = fromChar(src.get());
+			if(value==-1)continue;
+			
+			group = group<<6 | value;
+			if(++count==4) //every 4 chars -> 3 bytes
 			{
-				byte[] resized = new byte[x/8];
-				
-				System.arraycopy(out, 0, resized, 0, resized.length);
-				return resized;
+				dst.put((byte) (group>>>16));
+				dst.put((byte) (group>>>8));
+				dst.put((byte) group);
+				group = count = 0;
 			}
-			int debase = fromChar(in.charAt(strpos)); //get 0-64 value of the bit
-			
-			strpos = in.offsetByCodePoints(strpos, 1); //next codepoint
-			
-			if(debase!=-1)setBits(out,x,strpos<in.length()?6:8-x%8,debase); //set applicable bits in output to expected input if input is base64 char
-			else x-=6;
 		}
-		return out;
+		
+		//last char only holds the remaining bits
+		if(count==2)
+			dst.put((byte) ((group>>>6)<<2 | (group&3)));
+		else if(count==3)
+		{
+			group = (group>>>12)<<10 | ((group>>>6)&63)<<4 | (group&15);
+			dst.put((byte) (group>>>8));
+			dst.put((byte) group);
+		}
+	}
+	
+	@Override
+	public int encodedLength(int bytes) {
+		return (int) ((bytes*8L+5)/6);
+	}
+	
+	@Override
+	public int maxDecodedLength(int chars) {
+		return (int) ((chars*6L)/8);
 	}
 	
 	/**
@@ -59,12 +217,8 @@ public class Base64URL extends BinaryEncoder {
 	 */
 	public static char toChar(int in)
 	{
-		if(in<10)return (char) ('0'+in);
-		if(in<36)return (char) ('A'-10+in);
-		if(in<62)return (char) ('a'-36+in);
-		if(in<63)return '-';
-		if(in<64)return '_';
-		return 0;
+		if(in<0||in>63)return 0;
+		return ENCODE[in];
 	}
 	
 	/**
@@ -74,12 +228,23 @@ public class Base64URL extends BinaryEncoder {
 	 */
 	public static int fromChar(char in)
 	{
-		if('0'<=in&&in<='9')return in-'0';
-		if('A'<=in&&in<='Z')return in-'A'+10;
-		if('a'<=in&&in<='z')return in-'a'+36;
-		if(in=='-')return 62;
-		if(in=='_')return 63;
-		return -1;
+		if(in>255)return -1;
+		return DECODE[in];
+	}
+
+	@Override
+	public int groupBytes() {
+		return 3;
+	}
+	
+	@Override
+	public int groupSymbols() {
+		return 4;
+	}
+	
+	@Override
+	protected boolean isSymbol(int c) {
+		return c<0x10000&&fromChar((char)c)!=-1;
 	}
 
 	public String fullName() {
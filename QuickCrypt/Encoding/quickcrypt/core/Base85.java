@@ -0,0 +1,256 @@
+package quickcrypt.core;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Base-85 Binary encoder using the Z85 character set, 4 bytes are stored in every 5 ASCII characters
+ * <p>
+ * The character set has no '`' or '~' so the output can never contain Context.frontHead or Context.backHead
+ *
+ * @author Adam Spiegel
+ */
+
+public class Base85 extends BinaryEncoder {
+
+	private static final char[] ENCODE = ("0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ"
+											+".-:+=^!/*?&<>()[]{}@%$#").toCharArray(); //value -> char
+	private static final byte[] DECODE = new byte[128]; //char -> value, -1 if not base85
+
+	static
+	{
+		Arrays.fill(DECODE, (byte) -1);
+		for(int x=0;x<ENCODE.length;x++)
+			DECODE[ENCODE[x]] = (byte) x;
+	}
+
+	/**
+	 * Convert from raw bytes to encoded string
+	 * @param in bytes to convert
+	 * @return String with output data
+	 */
+	@Override
+	public String to(byte[] in) {
+		char[] out = new char[encodedLength(in.length)]; //exact size of output
+		int x = 0, c = 0;
+
+		for(int end=in.length-3;x<end;x+=4) //4 bytes -> 5 chars
+		{
+			long group = ((in[x]&0xFF)<<24 | (in[x+1]&0xFF)<<16 | (in[x+2]&0xFF)<<8 | (in[x+3]&0xFF)) & 0xFFFFFFFFL;
+			c = putGroup(group, out, c, 5);
+		}
+
+		int rem = in.length-x;
+		if(rem>0) ///end case: pad 1-3 bytes with 0s and only keep 1 more char than bytes
+		{
+			long group = 0;
+			for(int y=0;y<4;y++)
+				group = group<<8 | (y<rem?in[x+y]&0xFF:0);
+			putGroup(group, out, c, rem+1);
+		}
+
+		return new String(out);
+	}
+
+	/**
+	 * write the first num base85 digits of a group, most significant first
+	 * @return position after the written chars
+	 */
+	private static int putGroup(long group, char[] out, int c, int num)
+	{
+		for(int y=4;y>=0;y--)
+		{
+			if(y<num)out[c+y] = ENCODE[(int) (group%85)];
+			group /= 85;
+		}
+		return c+num;
+	}
+
+	/**
+	 * Convert from encoded String to raw bytes, ignores invalid characters
+	 * @param in String to decode
+	 * @return original bytes that were decode
+	 */
+	@Override
+	public byte[] from(String in) {
+
+		if(isStrict(in))return fromSymbols(in.toCharArray());
+
+		int len = in.length(), valid = 0;
+		for(int x=0;x<len;x++) //count base85 chars
+		{
+			char c = in.charAt(x);
+			if(c>' '&&c<128&&DECODE[c]!=-1)valid++;
+		}
+
+		//copy only base85 chars
+		char[] symbols = new char[valid];
+		for(int x=0,s=0;s<valid;x++)
+		{
+			char c = in.charAt(x);
+			if(c<=' ')continue; //whitespace or line break
+			if(c<128&&DECODE[c]!=-1)symbols[s++] = c;
+		}
+
+		return fromSymbols(symbols);
+	}
+
+	@Override
+	public byte[] fromStrict(String in) throws QCError
+	{
+		if(!isStrict(in))throw new QCError("Invalid base 85 text");
+		return fromSymbols(in.toCharArray());
+	}
+
+	/**
+	 * @return true if in only has base85 chars and a length to() could output
+	 */
+	private static boolean isStrict(String in)
+	{
+		if(in.length()%5==1)return false; //a single char in the last group holds no full byte
+
+		for(int x=0;x<in.length();x++)
+		{
+			char c = in.charAt(x);
+			if(c>=128||DECODE[c]==-1)return false;
+		}
+		return true;
+	}
+
+	/**
+	 * decode chars that are all known to be valid base85
+	 * @param in base85 chars
+	 * @return decoded bytes
+	 */
+	private static byte[] fromSymbols(char[] in)
+	{
+		int rem = in.length%5;
+		byte[] out = new byte[(in.length/5)*4 + (rem==0?0:rem-1)]; //exact size of output
+		int x = 0, b = 0;
+
+		for(int end=in.length-rem;x<end;x+=5) //5 chars -> 4 bytes
+		{
+			long group = DECODE[in[x]];
+			for(int y=1;y<5;y++)
+				group = group*85 + DECODE[in[x+y]];
+
+			out[b++] = (byte) (group>>>24);
+			out[b++] = (byte) (group>>>16);
+			out[b++] = (byte) (group>>>8);
+			out[b++] = (byte) group;
+		}
+
+		if(rem>1) ///end case: pad with the highest digit and only keep 1 less byte than chars
+		{
+			long group = 0;
+			for(int y=0;y<5;y++)
+				group = group*85 + (y<rem?DECODE[in[x+y]]:84);
+
+			for(int y=0;y<rem-1;y++)
+				out[b++] = (byte) (group>>>(24-8*y));
+		}
+
+		return out;
+	}
+
+	@Override
+	public void encode(ByteBuffer src, CharBuffer dst)
+	{
+		if(dst.remaining()<encodedLength(src.remaining()))throw new BufferOverflowException();
+
+		while(src.hasRemaining())
+		{
+			int rem = src.remaining()<4?src.remaining():4;
+			long group = 0;
+			for(int y=0;y<4;y++)
+				group = group<<8 | (y<rem?src.get()&0xFF:0);
+
+			long div = 85L*85*85*85;
+			for(int y=0;y<=rem;y++,div/=85) //5 chars, or 1 more char than bytes at the end
+				dst.put(ENCODE[(int) ((group/div)%85)]);
+		}
+	}
+
+	@Override
+	public void decode(CharBuffer src, ByteBuffer dst)
+	{
+		long group = 0; //value of base85 chars that have not been written yet
+		int count = 0;
+		while(src.hasRemaining())
+		{
+			char c = src.get();
+			if(c>=128||DECODE[c]==-1)continue;
+
+			group = group*85 + DECODE[c];
+			if(++count==5) //5 chars -> 4 bytes
+			{
+				dst.put((byte) (group>>>24));
+				dst.put((byte) (group>>>16));
+				dst.put((byte) (group>>>8));
+				dst.put((byte) group);
+				group = count = 0;
+			}
+		}
+
+		if(count>1) ///end case
+		{
+			for(int y=count;y<5;y++)
+				group = group*85 + 84;
+			for(int y=0;y<count-1;y++)
+				dst.put((byte) (group>>>(24-8*y)));
+		}
+	}
+
+	@Override
+	public int encodedLength(int bytes) {
+		return (bytes/4)*5 + (bytes%4==0?0:bytes%4+1);
+	}
+
+	@Override
+	public int maxDecodedLength(int chars) {
+		return (chars/5)*4 + (chars%5==0?0:chars%5-1);
+	}
+
+	@Override
+	public int groupBytes() {
+		return 4;
+	}
+
+	@Override
+	public int groupSymbols() {
+		return 5;
+	}
+
+	@Override
+	protected boolean isSymbol(int c) {
+		return c<128&&DECODE[c]!=-1;
+	}
+
+	@Override
+	public String fullName() {
+		return "Base 85 (Z85 character set)";
+	}
+
+	@Override
+	public String shortName() {
+		return "Base 85";
+	}
+
+	@Override
+	public char base64Id() {
+		return 'Z';
+	}
+
+	public String description()
+	{
+		return "Base 85 uses the Z85 character set made up of all lowercase and capital English letters, digits "
+                +"and the symbols . - : + = ^ ! / * ? & < > ( ) [ ] { } @ % $ #, Totaling 85 characters. "
+                +"Every 4 bytes are stored in 5 characters, instead of 3 bytes in 4 characters with Base 64. "
+                +"Without encryption or compression, This Encoder makes text that is approximately 2.5 times the input text + 16 characters for the header and footer. "
+                +"Base 85 only outputs ASCII code and can be used on normal UNICODE accepting environments but, also those only accept ASCII. "
+                +"It never uses quotes, backslashes, '`' or '~', so it will not break the Quick Crypt header and footer."
+                +"\n\nDisclaimer: Because English letters are used, text may contain a recognizable plain message. This is not the intent of the program or the programmer.";
+	}
+}
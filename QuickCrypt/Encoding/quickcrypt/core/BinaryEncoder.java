@@ -1,5 +1,14 @@
 package quickcrypt.core;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
 /**
  * Base parent class for any self-respecting binary encoder
  * Also Has a number of static helper methods for aspiring binary encoders
@@ -12,6 +21,9 @@ package quickcrypt.core;
  */
 
 public abstract class BinaryEncoder {
+	
+	final static int STREAMCHUNK = 16384; //approximate number of bytes or symbols processed at a time while streaming
+	
 	public abstract String to(byte[] in); //convert bytes to the encoding
 	public abstract byte[] from(String in); //convert encoding to bytes
 	
@@ -20,6 +32,284 @@ public abstract class BinaryEncoder {
 	public abstract char base64Id(); //returns a single unique char 0-9, A-Z, a-z, -, or _, that can be used to identify this encoder
 	public abstract String description(); //Moderately sized description of the encoder and it's properties
 	
+	/**
+	 * Decodes text that contains nothing but this encoder's symbols, as output by to().
+	 * Unlike from(), invalid characters and whitespace are not skipped, instead the whole input is rejected.
+	 * Encoders should override this with a decoder that does not check each character again
+	 * @param in String to decode
+	 * @return original bytes
+	 * @throws QCError if in contained anything that to() would not output
+	 */
+	public byte[] fromStrict(String in) throws QCError
+	{
+		for(int x=0;x<in.length();)
+		{
+			int cp = in.codePointAt(x);
+			x += Character.charCount(cp);
+			
+			if(!isSymbol(cp)||(isTailSymbol(cp)&&x<in.length()))
+				throw new QCError("Invalid character for "+shortName()+" at "+x);
+		}
+		return from(in);
+	}
+	
+	/**
+	 * @param bytes number of bytes to encode
+	 * @return exact number of UTF-16 chars to() outputs for that many bytes
+	 */
+	public abstract int encodedLength(int bytes);
+	
+	/**
+	 * @param chars number of UTF-16 chars to decode
+	 * @return largest number of bytes from() can output for that many chars
+	 */
+	public abstract int maxDecodedLength(int chars);
+	
+	/**
+	 * Encodes all remaining bytes of src into dst, advancing both positions.
+	 * Works with direct buffers, encoders should override this to avoid creating temporary arrays
+	 * @param src bytes to encode
+	 * @param dst buffer for the encoded text, must have encodedLength(src.remaining()) chars remaining
+	 * @throws java.nio.BufferOverflowException if dst is too small
+	 */
+	public void encode(ByteBuffer src, CharBuffer dst)
+	{
+		byte[] in = new byte[src.remaining()];
+		src.get(in);
+		dst.put(to(in));
+	}
+	
+	/**
+	 * Decodes all remaining chars of src into dst, advancing both positions. Invalid characters are skipped like from().
+	 * Works with direct buffers, encoders should override this to avoid creating temporary arrays
+	 * @param src encoded text
+	 * @param dst buffer for the decoded bytes, at most maxDecodedLength(src.remaining()) bytes are written
+	 * @throws java.nio.BufferOverflowException if dst is too small
+	 */
+	public void decode(CharBuffer src, ByteBuffer dst)
+	{
+		String in = src.toString();
+		src.position(src.limit());
+		dst.put(from(in));
+	}
+	
+	/**
+	 * Number of input bytes that are always encoded together as one group of symbols.
+	 * Encoding two byte arrays that are multiples of this size must give the same text as encoding them joined.
+	 * @return bytes per group, or 0 if the encoder can not be split into groups
+	 */
+	public int groupBytes()
+	{
+		return 0;
+	}
+	
+	/**
+	 * @return number of symbols (code points) output for one full group of groupBytes() bytes, or 0 if unknown
+	 */
+	public int groupSymbols()
+	{
+		return 0;
+	}
+	
+	/**
+	 * Checks if a code point can be part of this encoding, everything else is skipped while decoding
+	 * @param codePoint unicode code point to check
+	 * @return true if codePoint is one of the encoder's symbols
+	 */
+	protected boolean isSymbol(int codePoint)
+	{
+		return true;
+	}
+	
+	/**
+	 * Checks if a symbol is only allowed as the very last symbol of an encoding,
+	 * such symbols are skipped while decoding when more symbols follow
+	 * @param codePoint symbol to check
+	 * @return true if codePoint may only end an encoding
+	 */
+	protected boolean isTailSymbol(int codePoint)
+	{
+		return false;
+	}
+	
+	/**
+	 * Number of symbols at the end of the text that may decode differently depending on what follows them,
+	 * streaming and parallel decoding never decode them apart from the rest of the text
+	 * @return symbols to keep with the end, at least 1
+	 */
+	protected int heldSymbols()
+	{
+		return 1;
+	}
+	
+	/**
+	 * Checks if from() ignores symbols at the end of the text that directly follow a surrogate,
+	 * such as a char typed after an emoji. Streaming decoding then does the same
+	 * @return true if those symbols are ignored
+	 */
+	protected boolean trimsAfterSurrogate()
+	{
+		return false;
+	}
+	
+	/**
+	 * Encodes an entire stream without holding all of it in memory.
+	 * Input is read in chunks that are a multiple of groupBytes() so the output is identical to to()
+	 * @param in bytes to encode, read until the end of the stream
+	 * @param out destination of the encoded text (ex. a Writer or StringBuilder)
+	 * @throws IOException if reading or writing failed
+	 */
+	public void encode(InputStream in, Appendable out) throws IOException
+	{
+		int group = groupBytes();
+		byte[] buf = new byte[group>0?(STREAMCHUNK/group)*group:STREAMCHUNK];
+		ByteArrayOutputStream whole = group>0?null:new ByteArrayOutputStream(); //no known groups, everything has to be encoded at once
+		
+		int n = 0, read;
+		while((read = in.read(buf, n, buf.length-n))!=-1)
+		{
+			n += read;
+			if(n==buf.length) //chunk full, encode it
+			{
+				if(whole!=null)whole.write(buf, 0, n);
+				else out.append(to(buf));
+				n = 0;
+			}
+		}
+		
+		if(whole!=null)
+		{
+			whole.write(buf, 0, n);
+			out.append(to(whole.toByteArray()));
+		}
+		else if(n>0)out.append(to(Arrays.copyOf(buf, n))); //partial last group
+	}
+	
+	/**
+	 * Decodes an entire stream of text without holding all of it in memory.
+	 * Invalid characters are skipped the same way as from() and partial groups are carried between chunks
+	 * @param in encoded text, read until the end of the stream
+	 * @param out destination of the decoded bytes
+	 * @throws IOException if reading or writing failed
+	 */
+	public void decode(Reader in, OutputStream out) throws IOException
+	{
+		SymbolBuffer symbols = new SymbolBuffer(out);
+		char[] buf = new char[STREAMCHUNK];
+		
+		int n, keep = 0;
+		while((n = in.read(buf, keep, buf.length-keep))!=-1)
+		{
+			n += keep;
+			keep = n>0&&Character.isHighSurrogate(buf[n-1])?1:0; //surrogate pair may be split between reads
+			
+			symbols.add(CharBuffer.wrap(buf, 0, n-keep));
+			if(keep==1)buf[0] = buf[n-1];
+		}
+		if(keep==1)symbols.add(CharBuffer.wrap(buf, 0, 1));
+		
+		symbols.finish();
+	}
+	
+	/**
+	 * Decodes text directly to a stream, without creating the full output array
+	 * @param in encoded text
+	 * @param out destination of the decoded bytes
+	 * @throws IOException if writing failed
+	 */
+	public void decode(CharSequence in, OutputStream out) throws IOException
+	{
+		SymbolBuffer symbols = new SymbolBuffer(out);
+		symbols.add(in);
+		symbols.finish();
+	}
+	
+	/**
+	 * Collects valid symbols while streaming and decodes them once whole groups are available
+	 */
+	private class SymbolBuffer
+	{
+		OutputStream out;
+		StringBuilder pending = new StringBuilder(); //valid symbols that have not been decoded yet
+		int count; //number of symbols in pending
+		int run; //symbols at the end of pending that each directly followed a surrogate, ignored if nothing else follows
+		boolean surrogate; //last char added was a surrogate
+		
+		SymbolBuffer(OutputStream out)
+		{
+			this.out = out;
+		}
+		
+		void add(CharSequence in) throws IOException
+		{
+			for(int x=0;x<in.length();)
+			{
+				int cp = Character.codePointAt(in, x);
+				x += Character.charCount(cp);
+				
+				boolean after = surrogate;
+				surrogate = Character.isSurrogate(in.charAt(x-1));
+				if(!isSymbol(cp))continue;
+				
+				if(after&&trimsAfterSurrogate()) //may still be ignored, keep it apart until something else follows
+					run++;
+				else
+				{
+					dropTails(run+1); //tail symbols followed by more symbols are in the wrong place
+					run = 0;
+				}
+				
+				pending.appendCodePoint(cp);
+				count++;
+				
+				if(count>=STREAMCHUNK&&groupSymbols()>0)flush();
+			}
+		}
+		
+		/**
+		 * decode all whole groups except the last symbols, which could still turn out to be a tail
+		 */
+		void flush() throws IOException
+		{
+			int cut = ((count-run-heldSymbols())/groupSymbols())*groupSymbols();
+			if(cut<=0)return;
+			
+			int end = pending.offsetByCodePoints(0, cut);
+			out.write(from(pending.substring(0, end)));
+			pending.delete(0, end);
+			count -= cut;
+		}
+		
+		void finish() throws IOException
+		{
+			if(run>0) //nothing followed them
+				pending.setLength(pending.offsetByCodePoints(pending.length(), -run));
+			if(count>run)out.write(from(pending.toString()));
+			pending.setLength(0);
+			count = 0;
+			run = 0;
+		}
+		
+		/**
+		 * remove tail symbols from the last n symbols of pending
+		 */
+		void dropTails(int n)
+		{
+			int end = pending.length();
+			for(int y=0;y<n&&end>0;y++)
+			{
+				int cp = pending.codePointBefore(end);
+				int beg = end-Character.charCount(cp);
+				if(isTailSymbol(cp))
+				{
+					pending.delete(beg, end);
+					count--;
+				}
+				end = beg;
+			}
+		}
+	}
+	
 	/**
 	 * converts a signed byte to an unsigned value
 	 * @param b byte to convert
@@ -0,0 +1,71 @@
+package quickcrypt.core;
+
+/**
+ * Sequential cursor for reading groups of bits from a byte array (BigEndian)
+ * <p>
+ * Replaces repeated calls to BinaryEncoder.getBits() when bits are read in order.
+ * Bytes are loaded into a 64-bit accumulator so each read is only a shift and a mask
+ * instead of recalculating byte offsets for every symbol
+ *
+ * @author Adam Spiegel
+ * @see BitWriter
+ */
+public class BitReader {
+
+	private final byte[] bytes;
+	private int pos; //next byte to be loaded into the accumulator
+	private final int end; //index after the last byte that can be read
+
+	private long acc; //loaded bits, right aligned
+	private int accBits; //number of loaded bits in acc that have not been read
+
+	/**
+	 * Creates a reader starting at the first bit of bytes
+	 * @param bytes values to read from
+	 */
+	public BitReader(byte[] bytes)
+	{
+		this(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Creates a reader over a section of a byte array
+	 * @param bytes values to read from
+	 * @param off first byte to read
+	 * @param len number of bytes that can be read
+	 */
+	public BitReader(byte[] bytes, int off, int len)
+	{
+		this.bytes = bytes;
+		this.pos = off;
+		this.end = off+len;
+	}
+
+	/**
+	 * Read the next bits and advance the cursor
+	 * @param num number of bits to read (should not be more than 56 or remaining())
+	 * @return positive number less than 2^num that represents the read bits
+	 */
+	public long read(int num)
+	{
+		if(num==0)return 0;
+
+		if(accBits<num) //refill accumulator with whole bytes
+			while(accBits<=56&&pos<end)
+			{
+				acc = (acc<<8) | (bytes[pos++]&0xFF);
+				accBits += 8;
+			}
+
+		accBits -= num;
+		return (acc>>>accBits) & ((1L<<num)-1);
+	}
+
+	/**
+	 * @return number of bits that have not been read yet
+	 */
+	public long remaining()
+	{
+		return (long)(end-pos)*8 + accBits;
+	}
+}
@@ -0,0 +1,82 @@
+package quickcrypt.core;
+
+/**
+ * Sequential cursor for writing groups of bits to a byte array (BigEndian)
+ * <p>
+ * Replaces repeated calls to BinaryEncoder.setBits() when bits are written in order.
+ * Bits are gathered in a 64-bit accumulator and stored as whole bytes once they are complete,
+ * so no byte is read or modified more than once.
+ * Note: bytes are overwritten, not merged, so the cursor should be used on fresh output
+ *
+ * @author Adam Spiegel
+ * @see BitReader
+ */
+public class BitWriter {
+
+	private final byte[] bytes;
+	private int pos; //next byte to be stored
+
+	private long acc; //bits that have not been stored, right aligned
+	private int accBits; //number of bits in acc
+
+	/**
+	 * Creates a writer starting at the first bit of bytes
+	 * @param bytes array to write to
+	 */
+	public BitWriter(byte[] bytes)
+	{
+		this(bytes, 0);
+	}
+
+	/**
+	 * Creates a writer starting at a specific byte
+	 * @param bytes array to write to
+	 * @param off first byte to write
+	 */
+	public BitWriter(byte[] bytes, int off)
+	{
+		this.bytes = bytes;
+		this.pos = off;
+	}
+
+	/**
+	 * Write bits and advance the cursor
+	 * @param num number of bits to write (should not be more than 56)
+	 * @param in positive number less than 2^num that represents values of bits to write, higher bits are ignored
+	 */
+	public void write(int num, long in)
+	{
+		if(num==0)return;
+
+		acc = (acc<<num) | (in & ((1L<<num)-1));
+		accBits += num;
+
+		while(accBits>=8) //store completed bytes
+		{
+			accBits -= 8;
+			bytes[pos++] = (byte) (acc>>>accBits);
+		}
+	}
+
+	/**
+	 * Store any incomplete last byte, remaining bits in that byte are set to 0
+	 * @return index after the last byte that was written
+	 */
+	public int flush()
+	{
+		if(accBits>0)
+		{
+			bytes[pos++] = (byte) (acc<<(8-accBits));
+			accBits = 0;
+		}
+		return pos;
+	}
+
+	/**
+	 * @return number of complete bytes stored so far, counted from the start of the array
+	 */
+	public int bytePosition()
+	{
+		return pos;
+	}
+}
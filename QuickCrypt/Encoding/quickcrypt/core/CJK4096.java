@@ -1,5 +1,9 @@
 package quickcrypt.core;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
 /**
  * Base-4096 Binary encoder using many Chinese, Japanese, and Korean symbols on the Basic Multilingual Plane
  * 
@@ -15,20 +19,27 @@ public class CJK4096 extends BinaryEncoder {
 	 */
 	@Override
 	public String to(byte[] in) {
-		StringBuilder out = new StringBuilder();
-		for(int x=0;x<in.length;x+=3)
+		int rem = in.length%3;
+		char[] out = new char[encodedLength(in.length)]; //exact size of output
+		int x = 0, c = 0;
+		
+		for(int end=in.length-rem;x<end;x+=3) ///all other cases: 3 byte -> 2 char
 		{
-			if(x+1>=in.length)out.append((char)(getBits(in,x*8,8)*16 + 0x3400)); ///end case 1: in.length%3 == 1: encode 1 byte as 1 char
-			else
-			{
-				out.append((char)(getBits(in,x*8,12) + 0x3400));
-				
-				///end case 2: in.length%3 == 2: encode 1.5 bytes -> 1 char and remaining 0.5 byte -> 1 char with special character set
-				if(x+2>=in.length)out.append((char)(getBits(in,x*8+12,4) + 0x4400));
-				else out.append((char)(getBits(in,x*8+12,12) + 0x3400)); ///all other cases: 3 byte -> 2 char
-			}
+			int group = (in[x]&0xFF)<<16 | (in[x+1]&0xFF)<<8 | (in[x+2]&0xFF);
+			out[c++] = (char) ((group>>>12) + 0x3400);
+			out[c++] = (char) ((group&0xFFF) + 0x3400);
+		}
+		
+		if(rem==1) ///end case 1: in.length%3 == 1: encode 1 byte as 1 char
+			out[c++] = (char) ((in[x]&0xFF)*16 + 0x3400);
+		else if(rem==2) ///end case 2: in.length%3 == 2: encode 1.5 bytes -> 1 char and remaining 0.5 byte -> 1 char with special character set
+		{
+			int group = (in[x]&0xFF)<<8 | (in[x+1]&0xFF);
+			out[c++] = (char) ((group>>>4) + 0x3400);
+			out[c++] = (char) ((group&0xF) + 0x4400);
 		}
-		return out.toString();
+		
+		return new String(out);
 	}
 
 	/**
@@ -39,52 +50,207 @@ public class CJK4096 extends BinaryEncoder {
 	@Override
 	public byte[] from(String in) {
 		
-		int x; //remove trailing invalid chars
-		for(x=in.length()-1;x>=0&&(in.charAt(x)<0x3400||in.charAt(x)>0x440F||(x>0&&in.charAt(x-1)>0xD7FF&&in.charAt(x-1)<0xE000));x--);
-		if(x!=in.length()-1) in = in.substring(0, x+1);
+		if(isStrict(in))return decodeStrict(in);
+		
+		//remove trailing invalid chars and chars right after a surrogate, such as a char following an emoji
+		int len = in.length();
+		while(len>0&&(in.charAt(len-1)<0x3400||in.charAt(len-1)>0x440F||(len>1&&Character.isSurrogate(in.charAt(len-2)))))len--;
+		
+		int regular = 0;
+		for(int x=0;x<len;x++) //count 12 bit chars
+		{
+			char c = in.charAt(x);
+			if(c>=0x3400&&c<0x4400)regular++;
+		}
+		
+		//special 0.5 byte char only counts at the very end
+		char tail = len>0&&in.charAt(len-1)>=0x4400?in.charAt(len-1):0;
+		
+		///skip invalid or wrongly placed characters
+		char[] symbols = new char[regular];
+		for(int x=0,s=0;s<regular;x++)
+			if(in.charAt(x)>=0x3400&&in.charAt(x)<0x4400)symbols[s++] = in.charAt(x);
+		
+		return fromSymbols(symbols, tail);
+	}
+	
+	@Override
+	public byte[] fromStrict(String in) throws QCError
+	{
+		if(!isStrict(in))throw new QCError("Invalid CJK 4096 text");
+		return decodeStrict(in);
+	}
+	
+	/**
+	 * @return true if in only has 12 bit chars, except for a special 0.5 byte char ending an even length
+	 */
+	private static boolean isStrict(String in)
+	{
+		int len = in.length();
+		if(len>0&&len%2==0&&in.charAt(len-1)>=0x4400&&in.charAt(len-1)<=0x440F)len--; //end case 2
+		
+		for(int x=0;x<len;x++)
+		{
+			char c = in.charAt(x);
+			if(c<0x3400||c>=0x4400)return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * decode text already known to be strictly valid
+	 */
+	private static byte[] decodeStrict(String in)
+	{
+		int len = in.length();
+		if(len>0&&in.charAt(len-1)>=0x4400) //end case 2
+		{
+			char[] symbols = new char[len-1];
+			in.getChars(0, len-1, symbols, 0);
+			return fromSymbols(symbols, in.charAt(len-1));
+		}
+		return fromSymbols(in.toCharArray(), (char) 0);
+	}
+	
+	/**
+	 * decode 12 bit chars that are all known to be valid
+	 * @param in chars from 0x3400-0x43FF
+	 * @param tail special 0.5 byte char from the end or 0 if there was none
+	 * @return decoded bytes
+	 */
+	private static byte[] fromSymbols(char[] in, char tail)
+	{
+		int rem = in.length%2;
+		if(rem==0)tail = 0; //special char can only be the second char of a group
+		
+		byte[] out = new byte[(in.length/2)*3 + (rem==0?0:tail==0?1:2)]; //exact size of output
+		int x = 0, b = 0;
+		
+		for(int end=in.length-rem;x<end;x+=2) //all other cases, 2 char -> 3 bytes
+		{
+			int group = (in[x]-0x3400)<<12 | (in[x+1]-0x3400);
+			out[b++] = (byte) (group>>>16);
+			out[b++] = (byte) (group>>>8);
+			out[b++] = (byte) group;
+		}
+		
+		if(rem==1)
+		{
+			if(tail==0) //end case 1, 1st char -> 1 byte
+				out[b++] = (byte) ((in[x]-0x3400)/16);
+			else //end case 2, 1st char -> 1.5 bytes, 2nd char -> 0.5 bytes with special characters
+			{
+				int group = (in[x]-0x3400)<<4 | (tail-0x4400);
+				out[b++] = (byte) (group>>>8);
+				out[b++] = (byte) group;
+			}
+		}
+		
+		return out;
+	}
+
+	@Override
+	public void encode(ByteBuffer src, CharBuffer dst)
+	{
+		if(dst.remaining()<encodedLength(src.remaining()))throw new BufferOverflowException();
 		
-		byte[] out = new byte[(in.length()/2)*3 + 3]; //output with hypothetical maximum size
+		while(src.remaining()>=3) ///3 byte -> 2 char
+		{
+			int group = (src.get()&0xFF)<<16 | (src.get()&0xFF)<<8 | (src.get()&0xFF);
+			dst.put((char) ((group>>>12) + 0x3400));
+			dst.put((char) ((group&0xFFF) + 0x3400));
+		}
 		
-		char c1 = 0,c2 = 0;
+		if(src.remaining()==1) ///end case 1
+			dst.put((char) ((src.get()&0xFF)*16 + 0x3400));
+		else if(src.remaining()==2) ///end case 2
+		{
+			int group = (src.get()&0xFF)<<8 | (src.get()&0xFF);
+			dst.put((char) ((group>>>4) + 0x3400));
+			dst.put((char) ((group&0xF) + 0x4400));
+		}
+	}
+	
+	@Override
+	public void decode(CharBuffer src, ByteBuffer dst)
+	{
+		int first = -1; //value of the first char of a group that has not been written yet
+		char tail = 0; //special 0.5 byte char, only used if no other valid char follows
+		
+		//ignore the same trailing chars as from()
+		int end = src.limit();
+		while(end>src.position()&&(src.get(end-1)<0x3400||src.get(end-1)>0x440F||(end-1>src.position()&&Character.isSurrogate(src.get(end-2)))))end--;
 		
-		int bytepos = 0;
-		for(x=0;x<in.length();x=in.offsetByCodePoints(x, 1))
+		while(src.position()<end)
 		{
-			///skip invalid or wrongly placed characters
-			if(in.charAt(x)<0x3400||in.charAt(x)>0x440F)continue;
-			if(x<0&&in.charAt(x-1)>0xD7FF&&in.charAt(x-1)<0xE000)continue;
-			if(in.charAt(x)>=0x4400&&(c1==0||x+1<in.length()))continue;
+			char c = src.get();
+			if(c<0x3400||c>0x440F)continue;
 			
-			if(c1==0) ///get first char
+			if(c>=0x4400)
 			{
-				c1 = in.charAt(x);
-				
-				if(x+1>=in.length())//end case 1, 1st char -> 1 byte
-					out[bytepos++] = (byte) ((c1-0x3400)/16);
+				tail = c;
+				continue;
 			}
-			else //get second char
+			tail = 0;
+			
+			if(first==-1)first = c-0x3400;
+			else //2 char -> 3 bytes
 			{
-				c2 = in.charAt(x);
-				
-				setBits(out,(bytepos++)*8,12,c1-0x3400); //case 2 + all other cases, 1st char -> 1.5 bytes
-				
-				if(c2>=0x4400) //end case 2, 2nd char -> 0.5 bytes with special characters
-					setBits(out,(bytepos++)*8+4,4,c2-0x4400);
-				else
-				{  //all other cases, 2nd char -> 1.5 bytes
-					setBits(out,(bytepos++)*8+4,12,c2-0x3400);
-					bytepos++;
-					c1 = c2 = 0;
-				}
+				int group = first<<12 | (c-0x3400);
+				dst.put((byte) (group>>>16));
+				dst.put((byte) (group>>>8));
+				dst.put((byte) group);
+				first = -1;
 			}
 		}
 		
-		if(bytepos==out.length)return out; //right size already
-		
-		byte[] slim = new byte[bytepos]; //there were invalid chars trim off unused ouput bytes
-		System.arraycopy(out, 0, slim, 0, slim.length);
-		
-		return slim;
+		if(first!=-1)
+		{
+			if(tail==0) //end case 1
+				dst.put((byte) (first/16));
+			else //end case 2
+			{
+				int group = first<<4 | (tail-0x4400);
+				dst.put((byte) (group>>>8));
+				dst.put((byte) group);
+			}
+		}
+		src.position(src.limit());
+	}
+	
+	@Override
+	public int encodedLength(int bytes) {
+		return (bytes/3)*2 + bytes%3; //end cases use 1 char per remaining byte
+	}
+	
+	@Override
+	public int maxDecodedLength(int chars) {
+		return (chars/2)*3 + chars%2;
+	}
+	
+	@Override
+	public int groupBytes() {
+		return 3;
+	}
+	
+	@Override
+	public int groupSymbols() {
+		return 2;
+	}
+	
+	@Override
+	protected boolean isSymbol(int c) {
+		return c>=0x3400&&c<=0x440F;
+	}
+	
+	@Override
+	protected boolean isTailSymbol(int c) {
+		return c>=0x4400; //special 0.5 byte set for end case 2
+	}
+	
+	@Override
+	protected boolean trimsAfterSurrogate() {
+		return true;
 	}
 
 	@Override
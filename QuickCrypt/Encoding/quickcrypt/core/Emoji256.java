@@ -1,6 +1,9 @@
 package quickcrypt.core;
 
-import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
 
 /**
  * Binary Encoder that encodes to unicode using 256 emotion(emoji) characters
@@ -9,6 +12,25 @@ import java.io.ByteArrayOutputStream;
  */
 public class Emoji256 extends BinaryEncoder{
 	
+	///uses two codepoint sets. One byte per character for 256 characters.
+	///set #1 (0-79) = 0x1F600-0x1F64F
+	///set #2 (80-255) = 0x1F400 - 0x1F4AF
+	///every character in both sets is the high surrogate 0xD83D followed by a low surrogate
+	
+	private static final char HIGH = 0xD83D; //high surrogate shared by all characters
+	private static final char[] LOW = new char[256]; //byte -> low surrogate
+	private static final short[] FROMLOW = new short[0x250]; //low surrogate - 0xDC00 -> byte, -1 if not in either set
+	
+	static
+	{
+		Arrays.fill(FROMLOW, (short) -1);
+		for(int c=0;c<256;c++)
+		{
+			LOW[c] = Character.toChars(c + (c<80? 0x1F600 : 0x1F3B0))[1];
+			FROMLOW[LOW[c]-0xDC00] = (short) c;
+		}
+	}
+	
 	/**
 	 * Convert from raw bytes to encoded string
 	 * @param in bytes to convert
@@ -16,19 +38,15 @@ public class Emoji256 extends BinaryEncoder{
 	 */
 	public String to(byte[] in)
 	{
-		///uses two codepoint sets. One byte per character for 256 characters.
-	    ///set #1 (0-79) = 0x1F600-0x1F64F
-	    ///set #2 (80-255) = 0x1F400 - 0x1F4AF
+		char[] out = new char[encodedLength(in.length)]; //exact size of output, 2 UTF-16 chars per byte
 		
-		StringBuilder out = new StringBuilder();
-		
-		for(int x=0;x<in.length;x++)
+		for(int x=0,c=0;x<in.length;x++)
 		{
-			int c = byteToUnsignedInt(in[x]); //byte to encode
-			out.appendCodePoint(c + (c<80? 0x1F600 : 0x1F3B0)); //write point from specified set
+			out[c++] = HIGH;
+			out[c++] = LOW[in[x]&0xFF]; //write point from specified set
 		}
 		
-		return out.toString(); //return correct output
+		return new String(out); //return correct output
 	}
 
 	/**
@@ -37,21 +55,116 @@ public class Emoji256 extends BinaryEncoder{
 	 * @return original bytes that were decode
 	 */
 	public byte[] from(String in) {
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if(isStrict(in))return decodeStrict(in);
+		
+		byte[] out = new byte[in.length()/2]; //output with hypothetical maximum
+		int size = 0;
 		
-		for(int x=0;x<in.length();x = in.offsetByCodePoints(x, 1))
+		for(int x=0;x<in.length()-1;x++)
 		{
-			int code = in.codePointAt(x);
+			if(in.charAt(x)!=HIGH)continue; //not in either set, including whitespace and line breaks
 			
-			if(!(code<0x1F400||code>0x1F64F)) //around valid range (points between them will be filtered out later)
+			int low = in.charAt(x+1)-0xDC00;
+			if(low>=0&&low<FROMLOW.length&&FROMLOW[low]!=-1) //points between the sets are filtered out
 			{
-				if(code>=0x1F600)out.write(code - 0x1F600); //write from set 1
-				else if(code<=0x1F4AF)out.write(code - 0x1F3B0); //write from set 2
-				//otherwise it is in middle section
+				out[size++] = (byte) FROMLOW[low];
+				x++;
 			}
 		}
 		
-		return out.toByteArray(); //return correct output
+		if(size==out.length)return out;
+		return Arrays.copyOf(out, size); //return correct output
+	}
+
+	@Override
+	public byte[] fromStrict(String in) throws QCError
+	{
+		if(!isStrict(in))throw new QCError("Invalid Emoji 256 text");
+		return decodeStrict(in);
+	}
+	
+	/**
+	 * @return true if in is made only of characters from the two sets
+	 */
+	private static boolean isStrict(String in)
+	{
+		if(in.length()%2!=0)return false;
+		
+		for(int x=0;x<in.length();x+=2)
+		{
+			int low = in.charAt(x+1)-0xDC00;
+			if(in.charAt(x)!=HIGH||low<0||low>=FROMLOW.length||FROMLOW[low]==-1)return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * decode text already known to be strictly valid
+	 */
+	private static byte[] decodeStrict(String in)
+	{
+		byte[] out = new byte[in.length()/2]; //exact size of output
+		for(int x=0;x<out.length;x++)
+			out[x] = (byte) FROMLOW[in.charAt(x*2+1)-0xDC00];
+		return out;
+	}
+	
+	@Override
+	public void encode(ByteBuffer src, CharBuffer dst)
+	{
+		if(dst.remaining()<encodedLength(src.remaining()))throw new BufferOverflowException();
+		
+		while(src.hasRemaining())
+		{
+			dst.put(HIGH);
+			dst.put(LOW[src.get()&0xFF]);
+		}
+	}
+	
+	@Override
+	public void decode(CharBuffer src, ByteBuffer dst)
+	{
+		boolean high = false; //last char was the shared high surrogate
+		while(src.hasRemaining())
+		{
+			char c = src.get();
+			if(high)
+			{
+				int low = c-0xDC00;
+				if(low>=0&&low<FROMLOW.length&&FROMLOW[low]!=-1)
+				{
+					dst.put((byte) FROMLOW[low]);
+					high = false;
+					continue;
+				}
+			}
+			high = c==HIGH;
+		}
+	}
+	
+	@Override
+	public int encodedLength(int bytes) {
+		return bytes*2;
+	}
+	
+	@Override
+	public int maxDecodedLength(int chars) {
+		return chars/2;
+	}
+	
+	@Override
+	public int groupBytes() {
+		return 1;
+	}
+	
+	@Override
+	public int groupSymbols() {
+		return 1;
+	}
+	
+	@Override
+	protected boolean isSymbol(int code) {
+		return (code>=0x1F600&&code<=0x1F64F)||(code>=0x1F400&&code<=0x1F4AF);
 	}
 
 	@Override
@@ -1,5 +1,10 @@
 package quickcrypt.core;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
 /**
  * Binary Encoder that converts to and from hexadecimal
  * 
@@ -8,58 +13,162 @@ package quickcrypt.core;
  */
 
 public class Hexadecimal extends BinaryEncoder {
+	
+	private static final char[] PAIRS = new char[512]; //byte -> its two hex chars
+	private static final byte[] DIGITS = new byte[128]; //char -> value 0-15, -1 if not a hex char
+	
+	static
+	{
+		String digits = "0123456789ABCDEF";
+		for(int x=0;x<256;x++)
+		{
+			PAIRS[x*2] = digits.charAt(x/16);
+			PAIRS[x*2+1] = digits.charAt(x%16);
+		}
+		
+		Arrays.fill(DIGITS, (byte) -1);
+		for(int x=0;x<16;x++)
+		{
+			DIGITS[digits.charAt(x)] = (byte) x;
+			DIGITS[Character.toLowerCase(digits.charAt(x))] = (byte) x;
+		}
+	}
+	
 	public String to(byte[] in)
 	{
-		StringBuilder out = new StringBuilder();
-		for(byte c : in) //for add bytes
+		char[] out = new char[encodedLength(in.length)]; //exact size of output
+		for(int x=0,c=0;x<in.length;x++) //every byte -> 2 chars from the table
 		{
-			//4 high bits converted and added to string
-			char tmp = (char) (byteToUnsignedInt(c)/16);
-			if(tmp<10)tmp += '0';
-			else tmp += 'A'-10;
-			out.append(tmp);
-			
-			//4 low bits converted and added to string
-			tmp = (char) (byteToUnsignedInt(c)%16);
-			if(tmp<10)tmp += '0';
-			else tmp += 'A'-10;
-			out.append(tmp);
+			int pair = (in[x]&0xFF)*2;
+			out[c++] = PAIRS[pair];
+			out[c++] = PAIRS[pair+1];
 		}
 		
-		return out.toString();
+		return new String(out);
 	}
 	
 	public byte[] from(String in)
+	{
+		if(isStrict(in))return decodeStrict(in);
+		return decodeLenient(in);
+	}
+	
+	@Override
+	public byte[] fromStrict(String in) throws QCError
+	{
+		if(!isStrict(in))throw new QCError("Invalid hexadecimal text");
+		return decodeStrict(in);
+	}
+	
+	/**
+	 * @return true if in is an even number of hex chars and nothing else
+	 */
+	private static boolean isStrict(String in)
+	{
+		if(in.length()%2!=0)return false;
+		
+		for(int x=0;x<in.length();x++)
+		{
+			char c = in.charAt(x);
+			if(c>=128||DIGITS[c]==-1)return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * decode text already known to be strictly valid
+	 */
+	private static byte[] decodeStrict(String in)
+	{
+		byte[] out = new byte[in.length()/2]; //exact size of output
+		for(int x=0,c=0;x<out.length;x++,c+=2)
+			out[x] = (byte) (DIGITS[in.charAt(c)]<<4 | DIGITS[in.charAt(c+1)]);
+		return out;
+	}
+	
+	/**
+	 * decode text with invalid chars mixed in by skipping them
+	 */
+	private static byte[] decodeLenient(String in)
 	{
 		byte[] out = new byte[in.length()/2]; //output with hypothetical maximum
-		byte nextByte = 0;
-		int bitsPushed = 0;
+		int high = -1; //first hex char of the next byte, -1 if it hasn't been read
+		int size = 0;
 		for(int x=0;x<in.length();x++) ///Every input char
 		{
-			//build up next byte to add
-			nextByte *= 16;
-			if('0'<=in.charAt(x) && in.charAt(x)<='9') nextByte += in.charAt(x)-'0';
-			else if('A'<=in.charAt(x) && in.charAt(x)<='F') nextByte += in.charAt(x)-'A'+10;
-			else if('a'<=in.charAt(x) && in.charAt(x)<='f') nextByte += in.charAt(x)-'a'+10;
-			else continue; //this character contained a non hex value,ignore
+			char c = in.charAt(x);
+			if(c<=' ')continue; //whitespace or line break
 			
-			bitsPushed += 4;
+			int digit = c<128?DIGITS[c]:-1;
+			if(digit==-1)continue; //this character contained a non hex value,ignore
 			
-			if(bitsPushed%8==0) //add byte when two new hex characters have been read
+			if(high==-1)high = digit;
+			else //add byte when two new hex characters have been read
 			{
-				out[bitsPushed/8-1] = nextByte;
-				nextByte = 0;
+				out[size++] = (byte) (high<<4 | digit);
+				high = -1;
 			}
 		}
 		
-		//slim down output to actual size
-		byte slim[] = new byte[bitsPushed/8];
-		for(int x=0;x<bitsPushed/8;x++)
+		if(size==out.length)return out;
+		return Arrays.copyOf(out, size); //slim down output to actual size
+	}
+	
+	@Override
+	public void encode(ByteBuffer src, CharBuffer dst)
+	{
+		if(dst.remaining()<encodedLength(src.remaining()))throw new BufferOverflowException();
+		
+		while(src.hasRemaining())
 		{
-			slim[x] = out[x];
+			int pair = (src.get()&0xFF)*2;
+			dst.put(PAIRS[pair]);
+			dst.put(PAIRS[pair+1]);
 		}
-		
-		return slim;
+	}
+	
+	@Override
+	public void decode(CharBuffer src, ByteBuffer dst)
+	{
+		int high = -1; //first hex char of the next byte
+		while(src.hasRemaining())
+		{
+			char c = src.get();
+			int digit = c<128?DIGITS[c]:-1;
+			if(digit==-1)continue;
+			
+			if(high==-1)high = digit;
+			else
+			{
+				dst.put((byte) (high<<4 | digit));
+				high = -1;
+			}
+		}
+	}
+	
+	@Override
+	public int encodedLength(int bytes) {
+		return bytes*2;
+	}
+	
+	@Override
+	public int maxDecodedLength(int chars) {
+		return chars/2;
+	}
+	
+	@Override
+	public int groupBytes() {
+		return 1;
+	}
+	
+	@Override
+	public int groupSymbols() {
+		return 2;
+	}
+	
+	@Override
+	protected boolean isSymbol(int c) {
+		return c<128&&DIGITS[c]!=-1;
 	}
 
 	public String fullName() {
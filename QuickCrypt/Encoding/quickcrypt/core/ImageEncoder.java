@@ -124,19 +124,21 @@ public class ImageEncoder {
 		if ((put.length * 8) % pallateBits != 0)
 			truelen++;
 
+		BitWriter header = new BitWriter(put);
 		for (int x = 0; x <= palette.length; x++) ///encoding palette
-			BinaryEncoder.setBits(put, pallateBits * x, pallateBits, x % palette.length);
+			header.write(pallateBits, x % palette.length);
 
 		///magic number
-		BinaryEncoder.setBits(put, pallateBits * (palette.length + 1), 32, 1234567890);
+		header.write(32, 1234567890);
 
 		///length
-		BinaryEncoder.setBits(put, pallateBits * (palette.length + 1) + 32, 32, in.length);
+		header.write(32, in.length);
+		header.flush();
 
 		//rest of the data
 		System.arraycopy(in, 0, put, dataoffbyte, in.length);
 		
-		BinaryEncoder.setBits(put, (dataoffbyte + in.length) * 8, 32, 987654321);
+		new BitWriter(put, dataoffbyte + in.length).write(32, 987654321);
 
 		//determine best width and height
 		int width = 1+(int)Math.sqrt(truelen), height = width; //default square
@@ -163,10 +165,10 @@ public class ImageEncoder {
 		BufferedImage out = new BufferedImage(width*blockSize, height*blockSize, BufferedImage.TYPE_INT_ARGB);
 
 		//convert put to out by using blocks and the palate
+		BitReader bits = new BitReader(put);
 		for (int i = 0; i < truelen; i++) {
 			
-			int val = (int) BinaryEncoder.getBits(put, i * pallateBits, i * pallateBits + pallateBits < put.length * 8 
-					? pallateBits : put.length * 8 - i * pallateBits);
+			int val = (int) bits.read(bits.remaining() > pallateBits ? pallateBits : (int) bits.remaining());
 			
 			int rgb = palette[val].getRGB();
 
@@ -322,6 +324,7 @@ public class ImageEncoder {
 
 		int headerbitsize = 32 + 32;
 		byte[] header = new byte[headerbitsize / 8 + 1];
+		BitWriter bits = new BitWriter(header);
 		
 		for (int i = palatte.length + 1; i < palatte.length + 1
 				+ (headerbitsize / palatteBits + (headerbitsize % palatteBits == 0 ? 0 : 1)); i++) {
@@ -333,8 +336,9 @@ public class ImageEncoder {
 
 			//get closest color in palate to this spot
 			int val = roundToPallet(new Color(buffimg.getRGB(x, y)), palatte);
-			BinaryEncoder.setBits(header, (i - (palatte.length + 1)) * palatteBits, palatteBits, val);
+			bits.write(palatteBits, val);
 		}
+		bits.flush();
 
 		return header;
 	}
@@ -387,7 +391,7 @@ public class ImageEncoder {
 				continue;
 
 			byte[] testHead = tryHeader(buffimg, testPal, tryBlockSize, width, height);
-			if (testHead != null && BinaryEncoder.getBits(testHead, 0, 32) == 1234567890) {
+			if (testHead != null && new BitReader(testHead).read(32) == 1234567890) {
 				//passed all the required tests, could be correct block size, how likely is it?
 				
 				//@TODO have a more extensive secondary blocksize screening process 
@@ -433,11 +437,12 @@ public class ImageEncoder {
 		if (header == null)
 			return null;
 
-		if (BinaryEncoder.getBits(header, 0, 32) != 1234567890)
+		BitReader headerBits = new BitReader(header);
+		if (headerBits.read(32) != 1234567890)
 			return null; //special code, confirm this is an encoding
 
 		//get length
-		long len = BinaryEncoder.getBits(header, 32, 32);
+		long len = headerBits.read(32);
 		if (len > 1073741824)
 			return null;
 		
@@ -452,6 +457,7 @@ public class ImageEncoder {
 		//get remaining output
 		int bitidx;
 		int bitlen = out.length * 8;
+		BitWriter bits = new BitWriter(out);
 		for (int i = dataoffbits / palatteBits; (bitidx = i * palatteBits - dataoffbits) < bitlen; i++) {
 			int x = (i % bwidth) * blockSize + blockSize / 2;
 			int y = (i / bwidth) * blockSize + blockSize / 2;
@@ -461,7 +467,10 @@ public class ImageEncoder {
 
 			//find nearest color in palate for bits
 			int val = roundToPallet(new Color(buffimg.getRGB(x, y)), palatte);
-			BinaryEncoder.setBits(out, bitidx, bitidx + palatteBits < bitlen ? palatteBits : bitlen - bitidx, val);
+			if (bitidx + palatteBits <= bitlen)
+				bits.write(palatteBits, val);
+			else //last block is shared with the trailing magic number, keep only its leading bits
+				bits.write(bitlen - bitidx, val >> (bitidx + palatteBits - bitlen));
 		}
 
 		return out;
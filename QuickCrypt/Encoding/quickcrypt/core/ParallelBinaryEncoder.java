@@ -0,0 +1,276 @@
+package quickcrypt.core;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Wrapper around any BinaryEncoder that encodes and decodes large inputs in chunks on several threads
+ * <p>
+ * Chunks are split on the wrapped encoder's group boundary so the output is identical to the wrapped encoder.
+ * Inputs smaller than the threshold, encoders without groups, text with invalid characters
+ * and single threaded pools are passed to the wrapped encoder unchanged
+ *
+ * @author Adam Spiegel
+ */
+public class ParallelBinaryEncoder extends BinaryEncoder {
+
+	public final static int DEFAULT_THRESHOLD = 1<<20; //inputs smaller than this many bytes or chars are not split
+	final static int MINCHUNK = 1<<16; //smallest chunk given to a single thread
+
+	private static ForkJoinPool sharedPool; //created when first needed
+
+	private BinaryEncoder encoder;
+	private int threshold;
+	private ForkJoinPool pool;
+
+	/**
+	 * Wraps an encoder using the default threshold and a shared pool
+	 * @param encoder encoder to run in parallel
+	 */
+	public ParallelBinaryEncoder(BinaryEncoder encoder)
+	{
+		this(encoder, DEFAULT_THRESHOLD, null);
+	}
+
+	/**
+	 * @param encoder encoder to run in parallel
+	 * @param threshold smallest input, in bytes to encode or chars to decode, that is split into chunks
+	 * @param pool pool to run chunks on, or null to use a pool shared by all wrappers
+	 */
+	public ParallelBinaryEncoder(BinaryEncoder encoder, int threshold, ForkJoinPool pool)
+	{
+		this.encoder = encoder;
+		this.threshold = threshold;
+		this.pool = pool;
+	}
+
+	/**
+	 * @return pool shared by all wrappers and other parallel work like Compression.deflateParallel
+	 */
+	static synchronized ForkJoinPool sharedPool()
+	{
+		if(sharedPool==null)sharedPool = new ForkJoinPool();
+		return sharedPool;
+	}
+
+	private ForkJoinPool pool()
+	{
+		return pool!=null?pool:sharedPool();
+	}
+
+	/**
+	 * @param len size of input
+	 * @param group size of a group in the same unit
+	 * @return size of each chunk, a multiple of group
+	 */
+	private int chunkSize(int len, int group)
+	{
+		int chunk = len/(pool().getParallelism()*4) + 1; //a few chunks per thread to balance uneven threads
+		if(chunk<MINCHUNK)chunk = MINCHUNK;
+		return ((chunk+group-1)/group)*group;
+	}
+
+	/**
+	 * Run all actions on the pool and wait for them to finish
+	 */
+	private void runAll(final List<RecursiveAction> actions)
+	{
+		pool().invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(actions);
+			}
+		});
+	}
+
+	/**
+	 * Encode in chunks straight into one pre-sized output
+	 */
+	@Override
+	public String to(final byte[] in) {
+		int group = encoder.groupBytes();
+		if(in.length<threshold||group==0||pool().getParallelism()<2)return encoder.to(in);
+
+		final char[] out = new char[encoder.encodedLength(in.length)];
+		int chunk = chunkSize(in.length, group);
+
+		List<RecursiveAction> actions = new ArrayList<RecursiveAction>();
+		for(int x=0;x<in.length;x+=chunk)
+		{
+			final int off = x, len = Math.min(chunk, in.length-x);
+			actions.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					//every chunk before this one is made of whole groups so its position in the output is exact
+					int outOff = encoder.encodedLength(off);
+					encoder.encode(ByteBuffer.wrap(in, off, len), CharBuffer.wrap(out, outOff, encoder.encodedLength(len)));
+				}
+			});
+		}
+
+		runAll(actions);
+		return new String(out);
+	}
+
+	/**
+	 * Decode in chunks if every character is a valid symbol, otherwise decode with the wrapped encoder
+	 */
+	@Override
+	public byte[] from(final String in) {
+		int group = encoder.groupBytes();
+		if(in.length()<threshold||group==0||pool().getParallelism()<2)return encoder.from(in);
+
+		final int groupChars = encoder.encodedLength(group); //chars in one full group
+		int chunk = chunkSize(in.length(), groupChars);
+		int count = (in.length()+chunk-1)/chunk;
+		if(count>1&&in.length()-(count-1)*chunk<encoder.heldSymbols()*(groupChars/encoder.groupSymbols()))
+			count--; //symbols that change the group before them stay in the last chunk
+		final int chunks = count;
+
+		//check every chunk is clean so chunk boundaries line up with groups
+		final boolean[] clean = new boolean[chunks];
+		List<RecursiveAction> actions = new ArrayList<RecursiveAction>();
+		for(int x=0;x<chunks;x++)
+		{
+			final int c = x, beg = x*chunk, end = c==chunks-1?in.length():beg+chunk;
+			actions.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					clean[c] = isClean(in, beg, end, c==chunks-1);
+				}
+			});
+		}
+		runAll(actions);
+
+		for(boolean c : clean)
+			if(!c)return encoder.from(in); //invalid characters, boundaries are unknown
+
+		//only the last chunk can hold a partial group
+		byte[] last = encoder.from(in.substring((chunks-1)*chunk));
+		int full = (chunk/groupChars)*group; //bytes in every other chunk
+
+		final byte[] out = new byte[full*(chunks-1) + last.length];
+		System.arraycopy(last, 0, out, full*(chunks-1), last.length);
+
+		actions.clear();
+		for(int x=0;x<chunks-1;x++)
+		{
+			final int beg = x*chunk, end = beg+chunk, off = x*full;
+			actions.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					encoder.decode(CharBuffer.wrap(in, beg, end), ByteBuffer.wrap(out, off, out.length-off));
+				}
+			});
+		}
+		runAll(actions);
+
+		return out;
+	}
+
+	/**
+	 * @return true if every char from beg to end is part of a symbol, and tail symbols only end the last chunk
+	 */
+	private boolean isClean(String in, int beg, int end, boolean last)
+	{
+		for(int x=beg;x<end;)
+		{
+			int cp = in.codePointAt(x);
+			x += Character.charCount(cp);
+
+			if(!encoder.isSymbol(cp)||x>end)return false;
+			if(encoder.isTailSymbol(cp)&&!(last&&x==end))return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void encode(ByteBuffer src, CharBuffer dst) {
+		encoder.encode(src, dst);
+	}
+
+	@Override
+	public void decode(CharBuffer src, ByteBuffer dst) {
+		encoder.decode(src, dst);
+	}
+
+	@Override
+	public int encodedLength(int bytes) {
+		return encoder.encodedLength(bytes);
+	}
+
+	@Override
+	public int maxDecodedLength(int chars) {
+		return encoder.maxDecodedLength(chars);
+	}
+
+	@Override
+	public int groupBytes() {
+		return encoder.groupBytes();
+	}
+
+	@Override
+	public int groupSymbols() {
+		return encoder.groupSymbols();
+	}
+
+	@Override
+	protected boolean isSymbol(int codePoint) {
+		return encoder.isSymbol(codePoint);
+	}
+
+	@Override
+	protected boolean isTailSymbol(int codePoint) {
+		return encoder.isTailSymbol(codePoint);
+	}
+
+	@Override
+	protected int heldSymbols() {
+		return encoder.heldSymbols();
+	}
+
+	@Override
+	protected boolean trimsAfterSurrogate() {
+		return encoder.trimsAfterSurrogate();
+	}
+
+	@Override
+	public String fullName() {
+		return encoder.fullName();
+	}
+
+	@Override
+	public String shortName() {
+		return encoder.shortName();
+	}
+
+	@Override
+	public char base64Id() {
+		return encoder.base64Id();
+	}
+
+	@Override
+	public String description() {
+		return encoder.description();
+	}
+
+	/**
+	 * @return the wrapped encoder
+	 */
+	public BinaryEncoder getEncoder()
+	{
+		return encoder;
+	}
+}
@@ -1,10 +1,19 @@
 package quickcrypt.core;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
 import java.util.zip.*;
 
 /**
  * Wrapper for inflating and deflating byte arrays of any size with java Z-LIB
  * compression
+ * <p>
+ * Each thread keeps one Deflater and one Inflater that are reset and reused for every call,
+ * so their native memory is not allocated again for every message
  * 
  * @author Adam Spiegel
  *
@@ -12,7 +21,24 @@ import java.util.zip.*;
 
 public class Compression {
 
-	final static int ZLIBCHUNK = 16384; //size of temporary Z-LIB buffers
+	final static int ZLIBCHUNK = 16384; //minimum size of Z-LIB output buffers
+	final static int MAXARRAY = Integer.MAX_VALUE-8; //largest array size the JVM reliably allows
+	final static int PARALLELBLOCK = 1<<20; //uncompressed size of each block compressed by deflateParallel
+	final static int MAXRATIO = 1032; //Z-LIB can not expand data more than this while inflating
+
+	//reusable codecs, one per thread because they are not thread safe
+	private static final ThreadLocal<Deflater> DEFLATERS = new ThreadLocal<Deflater>() {
+		@Override
+		protected Deflater initialValue() {
+			return new Deflater();
+		}
+	};
+	private static final ThreadLocal<Inflater> INFLATERS = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater();
+		}
+	};
 
 	/**
 	 * Deflate or compress bytes with java Z-LIB Should never fail, except for
@@ -23,33 +49,96 @@ public class Compression {
 	 * @return compressed bytes
 	 */
 	public static byte[] deflate(byte[] input) {
-		
-		byte[] buf = new byte[ZLIBCHUNK]; //temporary storage buffer
-		ArrayList<Byte> output = new ArrayList<Byte>(); //resizeable output holder
+		return deflate(input, 0, input.length, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+	}
 
-		//setup deflater with this input
-		Deflater stream = new Deflater();
-		stream.setInput(input);
-		stream.finish();
+	/**
+	 * Deflate or compress bytes with a specific Z-LIB level and strategy
+	 * 
+	 * @param input
+	 *            bytes to compress
+	 * @param level
+	 *            Deflater.DEFAULT_COMPRESSION or 0-9, 1 is fastest and 9 is smallest
+	 * @param strategy
+	 *            Deflater.DEFAULT_STRATEGY, Deflater.FILTERED or Deflater.HUFFMAN_ONLY
+	 * @return compressed bytes
+	 */
+	public static byte[] deflate(byte[] input, int level, int strategy) {
+		return deflate(input, 0, input.length, level, strategy);
+	}
 
-		//fill buffer and add buffer to output
-		int compressedDataLength = 0;
-		do {
-			compressedDataLength = stream.deflate(buf, 0, ZLIBCHUNK);
+	/**
+	 * Deflate or compress a section of a byte array with java Z-LIB
+	 * 
+	 * @param input
+	 *            bytes to compress
+	 * @param off
+	 *            first byte to compress
+	 * @param len
+	 *            number of bytes to compress
+	 * @param level
+	 *            Deflater.DEFAULT_COMPRESSION or 0-9, 1 is fastest and 9 is smallest
+	 * @param strategy
+	 *            Deflater.DEFAULT_STRATEGY, Deflater.FILTERED or Deflater.HUFFMAN_ONLY
+	 * @return compressed bytes
+	 */
+	public static byte[] deflate(byte[] input, int off, int len, int level, int strategy) {
+		return deflate(input, off, len, level, strategy, null);
+	}
 
-			for (int x = 0; x < compressedDataLength; x++)
-				output.add(buf[x]);
+	/**
+	 * Deflate or compress bytes with a preset dictionary, short inputs that share
+	 * text with the dictionary compress much better
+	 * 
+	 * @param input
+	 *            bytes to compress
+	 * @param dictionary
+	 *            preset dictionary, inflate needs the same dictionary
+	 * @return compressed bytes
+	 * @see CompressionDictionary
+	 */
+	public static byte[] deflate(byte[] input, byte[] dictionary) {
+		return deflate(input, 0, input.length, Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY, dictionary);
+	}
+
+	private static byte[] deflate(byte[] input, int off, int len, int level, int strategy, byte[] dictionary) {
 
-		} while (compressedDataLength == ZLIBCHUNK); //buffer was completely filled keep going
+		byte[] output = new byte[deflateBound(len)]; //big enough for one pass in almost every case
+		int size = 0;
+
+		//setup deflater with this input
+		Deflater stream = DEFLATERS.get();
+		stream.setLevel(level); //applies to the whole stream because no input has been compressed since reset
+		stream.setStrategy(strategy);
+		if (dictionary != null)
+			stream.setDictionary(dictionary);
+		stream.setInput(input, off, len);
+		stream.finish();
 
-		stream.end(); //end stream properly
+		try {
+			while (!stream.finished()) {
+				if (size == output.length) //estimate was too small, grow the buffer
+					output = grow(output);
+				size += stream.deflate(output, size, output.length - size);
+			}
+		} finally {
+			stream.reset(); //ready for the next call and drops the reference to input
+		}
 
-		//convert output into byte array for return
-		byte[] bytes = new byte[output.size()];
-		for (int x = 0; x < output.size(); x++)
-			bytes[x] = output.get(x).byteValue();
+		return size == output.length ? output : Arrays.copyOf(output, size);
+	}
 
-		return bytes;
+	/**
+	 * Largest size that Z-LIB deflate output can be with default settings
+	 * (same estimate as compressBound() in Z-LIB)
+	 * 
+	 * @param len
+	 *            number of uncompressed bytes
+	 * @return maximum number of compressed bytes
+	 */
+	public static int deflateBound(int len) {
+		long bound = len + (len >> 12) + (len >> 14) + (len >> 25) + 13L;
+		return (int) Math.min(bound, MAXARRAY);
 	}
 
 	/**
@@ -62,30 +151,400 @@ public class Compression {
 	 *             When imput was not properly compressed or was corrupted.
 	 */
 	public static byte[] inflate(byte[] input) throws DataFormatException {
+		return inflate(input, null);
+	}
 
-		byte[] buf = new byte[ZLIBCHUNK]; //temporary storage buffer
-		ArrayList<Byte> output = new ArrayList<Byte>(); //resizeable output holder
+	/**
+	 * Inflate or decompress compressed bytes that may need a preset dictionary
+	 * 
+	 * @param input
+	 *            compressed bytes
+	 * @param dictionaries
+	 *            dictionary id -> dictionary, the id is stored in the compressed data (may be null)
+	 * @return uncompressed output bytes
+	 * @throws DataFormatException
+	 *             When imput was not properly compressed, was corrupted or needs an unknown dictionary.
+	 * @see CompressionDictionary
+	 */
+	public static byte[] inflate(byte[] input, Map<Integer, byte[]> dictionaries) throws DataFormatException {
+		return inflate(input, dictionaries, MAXARRAY, null);
+	}
+
+	/**
+	 * Inflate or decompress compressed bytes, stopping once the output passes a limit.
+	 * Memory used is never much more than the limit, no matter what the input claims
+	 * 
+	 * @param input
+	 *            compressed bytes
+	 * @param dictionaries
+	 *            dictionary id -> dictionary, the id is stored in the compressed data (may be null)
+	 * @param limit
+	 *            most uncompressed bytes allowed
+	 * @param progress
+	 *            told about progress after every chunk (may be null)
+	 * @return uncompressed output bytes
+	 * @throws DataFormatException
+	 *             When imput was not properly compressed, was corrupted, needs an unknown dictionary
+	 *             or is larger than limit uncompressed.
+	 */
+	public static byte[] inflate(byte[] input, Map<Integer, byte[]> dictionaries, long limit, Progress progress)
+			throws DataFormatException {
+
+		int max = (int) Math.min(limit, MAXARRAY);
+
+		//compressed data is usually a few times smaller than the output
+		Buffer output = new Buffer((int) Math.min(Math.max(ZLIBCHUNK, input.length * 4L), max), max);
+		try {
+			inflate(input, 0, input.length, output, dictionaries, max, progress);
+		} catch (IOException e) { //Buffer never throws
+			throw new DataFormatException(e.getMessage());
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * Inflate or decompress compressed bytes to a stream, one chunk at a time
+	 * 
+	 * @param input
+	 *            compressed bytes
+	 * @param off
+	 *            first compressed byte
+	 * @param len
+	 *            number of compressed bytes
+	 * @param output
+	 *            stream uncompressed bytes are written to, some may be written before an error
+	 * @param dictionaries
+	 *            dictionary id -> dictionary, the id is stored in the compressed data (may be null)
+	 * @param limit
+	 *            most uncompressed bytes allowed
+	 * @param progress
+	 *            told about progress after every chunk (may be null)
+	 * @return number of uncompressed bytes written
+	 * @throws DataFormatException
+	 *             When imput was not properly compressed, was corrupted, needs an unknown dictionary
+	 *             or is larger than limit uncompressed.
+	 * @throws IOException
+	 *             When output fails
+	 */
+	public static long inflate(byte[] input, int off, int len, OutputStream output, Map<Integer, byte[]> dictionaries,
+			long limit, Progress progress) throws DataFormatException, IOException {
+
+		byte[] buf = new byte[ZLIBCHUNK];
+		long size = 0;
 
 		//setup inflater with this input
-		Inflater stream = new Inflater();
-		stream.setInput(input);
+		Inflater stream = INFLATERS.get();
+		stream.setInput(input, off, len);
+
+		try {
+			while (!stream.finished()) {
+				int read = stream.inflate(buf);
+				if (read == 0 && stream.needsDictionary()) {
+					byte[] dictionary = dictionaries == null ? null : dictionaries.get(stream.getAdler());
+					if (dictionary == null)
+						throw new DataFormatException("Unknown compression dictionary " + Integer.toHexString(stream.getAdler()));
+					stream.setDictionary(dictionary);
+				} else if (read == 0 && stream.needsInput())
+					throw new DataFormatException("Compressed data is incomplete");
+
+				size += read;
+				if (size > limit) //stop before the output gets any bigger
+					throw new DataFormatException("Decompressed data is larger than the limit of " + limit + " bytes");
+
+				output.write(buf, 0, read);
+				if (progress != null)
+					progress.progress(stream.getBytesRead(), size);
+			}
+		} finally {
+			stream.reset();
+		}
 
-		//fill buffer and add buffer to output
-		int decompressedDataLength = 0;
-		do {
-			decompressedDataLength = stream.inflate(buf, 0, ZLIBCHUNK);
+		return size;
+	}
 
-			for (int x = 0; x < decompressedDataLength; x++)
-				output.add(buf[x]);
+	/**
+	 * Receives progress of long decompressions
+	 */
+	public interface Progress {
+		/**
+		 * @param read
+		 *            compressed bytes read so far
+		 * @param written
+		 *            uncompressed bytes written so far
+		 */
+		void progress(long read, long written);
+	}
 
-		} while (decompressedDataLength != 0); //buffer was completely filled keep going
+	/**
+	 * Growable output for inflate that never grows past a maximum size,
+	 * the final array is not copied again if the size was guessed exactly
+	 */
+	private static class Buffer extends OutputStream {
+		private byte[] buf;
+		private int count;
+		private final int max;
+
+		Buffer(int size, int max) {
+			buf = new byte[size];
+			this.max = max;
+		}
 
-		stream.end(); //end stream properly
+		@Override
+		public void write(int b) {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
 
-		//convert output into byte array for return
-		byte[] bytes = new byte[output.size()];
-		for (int x = 0; x < output.size(); x++)
-			bytes[x] = output.get(x).byteValue();
-		return bytes;
+		@Override
+		public void write(byte[] b, int off, int len) {
+			if (buf.length - count < len) //about double, but no more than max
+				buf = Arrays.copyOf(buf, (int) Math.min(Math.max(buf.length * 2L, (long) count + len), max));
+			System.arraycopy(b, off, buf, count, len);
+			count += len;
+		}
+
+		byte[] toByteArray() {
+			return count == buf.length ? buf : Arrays.copyOf(buf, count);
+		}
+	}
+
+	/**
+	 * Inflate or decompress compressed bytes into a buffer supplied by the caller,
+	 * avoids allocating when the decompressed size is already known
+	 * 
+	 * @param input
+	 *            compressed bytes
+	 * @param output
+	 *            array to store uncompressed bytes
+	 * @param off
+	 *            first index of output to write to
+	 * @return number of uncompressed bytes written to output
+	 * @throws DataFormatException
+	 *             When imput was not properly compressed, was corrupted or the
+	 *             uncompressed bytes do not fit in output.
+	 */
+	public static int inflate(byte[] input, byte[] output, int off) throws DataFormatException {
+		return inflate(input, 0, input.length, output, off, output.length - off);
+	}
+
+	/**
+	 * Inflate or decompress a section of a byte array into a section of a buffer supplied by the caller
+	 * 
+	 * @param input
+	 *            compressed bytes
+	 * @param inOff
+	 *            first compressed byte
+	 * @param inLen
+	 *            number of compressed bytes
+	 * @param output
+	 *            array to store uncompressed bytes
+	 * @param off
+	 *            first index of output to write to
+	 * @param len
+	 *            most bytes that can be written to output
+	 * @return number of uncompressed bytes written to output
+	 * @throws DataFormatException
+	 *             When imput was not properly compressed, was corrupted or the
+	 *             uncompressed bytes do not fit in output.
+	 */
+	public static int inflate(byte[] input, int inOff, int inLen, byte[] output, int off, int len) throws DataFormatException {
+
+		Inflater stream = INFLATERS.get();
+		stream.setInput(input, inOff, inLen);
+		int size = off, end = off + len;
+		byte[] extra = new byte[1]; //used when output is full but the stream has not reached its end yet
+
+		try {
+			while (!stream.finished()) {
+				int read;
+				if (size == end) {
+					if (stream.inflate(extra) != 0)
+						throw new DataFormatException("Decompressed data does not fit in output");
+					read = 0;
+				} else
+					read = stream.inflate(output, size, end - size);
+
+				if (read == 0 && (stream.needsInput() || stream.needsDictionary()))
+					throw new DataFormatException("Compressed data is incomplete");
+				size += read;
+			}
+		} finally {
+			stream.reset();
+		}
+
+		return size - off;
+	}
+
+	/**
+	 * Deflate or compress bytes in independent blocks on several threads.
+	 * Output is framed as the uncompressed length, block size and block count (4 bytes BigEndian each),
+	 * the compressed size of every block (4 bytes each) and then every block as its own Z-LIB stream
+	 * 
+	 * @param input
+	 *            bytes to compress
+	 * @return framed compressed bytes, can only be read by inflateParallel
+	 */
+	public static byte[] deflateParallel(final byte[] input) {
+
+		final int count = (input.length + PARALLELBLOCK - 1) / PARALLELBLOCK;
+		final byte[][] blocks = new byte[count][];
+
+		List<RecursiveAction> actions = new ArrayList<RecursiveAction>();
+		for (int x = 0; x < count; x++) {
+			final int block = x;
+			actions.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					int off = block * PARALLELBLOCK;
+					blocks[block] = deflate(input, off, Math.min(PARALLELBLOCK, input.length - off),
+							Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+				}
+			});
+		}
+		runAll(actions);
+
+		//frame, then copy blocks in order
+		int size = 12 + 4 * count;
+		for (byte[] b : blocks)
+			size += b.length;
+
+		byte[] output = new byte[size];
+		putInt(output, 0, input.length);
+		putInt(output, 4, PARALLELBLOCK);
+		putInt(output, 8, count);
+
+		int o = 12 + 4 * count;
+		for (int x = 0; x < count; x++) {
+			putInt(output, 12 + 4 * x, blocks[x].length);
+			System.arraycopy(blocks[x], 0, output, o, blocks[x].length);
+			o += blocks[x].length;
+		}
+
+		return output;
+	}
+
+	/**
+	 * Inflate or decompress bytes made by deflateParallel, blocks are inflated on several threads
+	 * 
+	 * @param input
+	 *            framed compressed bytes
+	 * @return uncompressed output bytes
+	 * @throws DataFormatException
+	 *             When imput was not properly compressed or was corrupted.
+	 */
+	public static byte[] inflateParallel(final byte[] input) throws DataFormatException {
+		return inflateParallel(input, MAXARRAY);
+	}
+
+	/**
+	 * Inflate or decompress bytes made by deflateParallel, unless the uncompressed size is over a limit
+	 * 
+	 * @param input
+	 *            framed compressed bytes
+	 * @param limit
+	 *            most uncompressed bytes allowed
+	 * @return uncompressed output bytes
+	 * @throws DataFormatException
+	 *             When imput was not properly compressed, was corrupted or is larger than limit uncompressed.
+	 */
+	public static byte[] inflateParallel(final byte[] input, long limit) throws DataFormatException {
+
+		if (input.length < 12)
+			throw new DataFormatException("Compressed data is incomplete");
+
+		final int len = getInt(input, 0);
+		final int blockSize = getInt(input, 4);
+		final int count = getInt(input, 8);
+
+		//check the frame before allocating anything
+		if (len < 0 || blockSize <= 0 || count < 0 || count > (input.length - 12) / 4
+				|| count != (int) ((len + (long) blockSize - 1) / blockSize)
+				|| len > (long) input.length * MAXRATIO)
+			throw new DataFormatException("Invalid compressed frame");
+		if (len > limit)
+			throw new DataFormatException("Decompressed data is larger than the limit of " + limit + " bytes");
+
+		final int[] offsets = new int[count + 1]; //position of each block in input
+		offsets[0] = 12 + 4 * count;
+		for (int x = 0; x < count; x++) {
+			int size = getInt(input, 12 + 4 * x);
+			if (size < 0 || size > input.length - offsets[x])
+				throw new DataFormatException("Invalid compressed frame");
+			offsets[x + 1] = offsets[x] + size;
+		}
+
+		final byte[] output = new byte[len];
+		final DataFormatException[] error = new DataFormatException[1];
+
+		List<RecursiveAction> actions = new ArrayList<RecursiveAction>();
+		for (int x = 0; x < count; x++) {
+			final int block = x;
+			actions.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					int off = block * blockSize, size = Math.min(blockSize, len - off);
+					try {
+						if (inflate(input, offsets[block], offsets[block + 1] - offsets[block], output, off, size) != size)
+							throw new DataFormatException("Compressed data is incomplete");
+					} catch (DataFormatException e) {
+						synchronized (error) {
+							error[0] = e;
+						}
+					}
+				}
+			});
+		}
+		runAll(actions);
+
+		synchronized (error) {
+			if (error[0] != null)
+				throw error[0];
+		}
+		return output;
+	}
+
+	/**
+	 * Run all actions on the shared pool and wait for them to finish
+	 */
+	private static void runAll(final List<RecursiveAction> actions) {
+		if (actions.size() < 2) { //not worth handing to the pool
+			for (RecursiveAction a : actions)
+				a.invoke();
+			return;
+		}
+
+		ParallelBinaryEncoder.sharedPool().invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(actions);
+			}
+		});
+	}
+
+	private static void putInt(byte[] b, int x, int v) {
+		b[x] = (byte) (v >>> 24);
+		b[x + 1] = (byte) (v >>> 16);
+		b[x + 2] = (byte) (v >>> 8);
+		b[x + 3] = (byte) v;
+	}
+
+	private static int getInt(byte[] b, int x) {
+		return (b[x] & 0xFF) << 24 | (b[x + 1] & 0xFF) << 16 | (b[x + 2] & 0xFF) << 8 | (b[x + 3] & 0xFF);
+	}
+
+	/**
+	 * @param buf
+	 *            full buffer
+	 * @return copy of buf with about twice the size
+	 */
+	private static byte[] grow(byte[] buf) {
+		if (buf.length == MAXARRAY)
+			throw new OutOfMemoryError("Compressed data is too large for an array");
+		return Arrays.copyOf(buf, (int) Math.min(buf.length * 2L, MAXARRAY));
 	}
 }
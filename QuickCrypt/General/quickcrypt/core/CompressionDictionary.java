@@ -0,0 +1,196 @@
+package quickcrypt.core;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.zip.Adler32;
+
+/**
+ * Preset dictionaries for Z-LIB compression of short messages, plus a trainer for custom dictionaries
+ * <p>
+ * A dictionary is text that Z-LIB treats as if it came right before the message, so short messages
+ * can refer back to common words instead of storing them. Z-LIB puts the Adler-32 of the dictionary
+ * in the compressed data, which is used as the dictionary id when decompressing.
+ * Strings closer to the end of a dictionary are cheaper to refer to, so the most useful ones are last
+ *
+ * @author Adam Spiegel
+ *
+ */
+
+public class CompressionDictionary {
+
+	final static int MAXSIZE = 32768; //Z-LIB can not look back further than this
+	final static int MAXWORDS = 3; //longest phrase considered by the trainer, in words
+	final static int MINLENGTH = 4; //shortest phrase considered by the trainer, in chars
+
+	/// built in dictionary of common English text, least common first
+	private static final String BUILTIN =
+			"https://www. .com/ .org .net http:// @gmail.com password username account address phone number "
+			+"Monday Tuesday Wednesday Thursday Friday Saturday Sunday January February March April June July "
+			+"August September October November December morning afternoon evening tonight tomorrow yesterday "
+			+"meeting office project information important question problem different another something "
+			+"everything nothing anything someone everyone because before after again always never maybe "
+			+"please thanks thank you sorry really right now later today love good great nice well better "
+			+"should could would there their they're where when what which while with without about around "
+			+"through between under over into from your you're yours have has had been being were was will "
+			+"can't don't doesn't didn't won't isn't I'm I'll I've it's that's let's Let me know if you "
+			+"I don't know. Do you want to Can you send me the See you soon. Talk to you later. How are you? "
+			+"I think that it is not going to be a the and for this that with you are is of to in on at it ";
+
+	private static byte[] builtinUTF8, builtinUTF16;
+
+	/**
+	 * Built in dictionary of common text
+	 *
+	 * @param utf8
+	 *            true for UTF_8 bytes, false for UTF_16LE bytes, matching how Context converts Strings
+	 * @return dictionary bytes
+	 */
+	public static synchronized byte[] builtIn(boolean utf8) {
+		if (builtinUTF8 == null) {
+			builtinUTF8 = BUILTIN.getBytes(StandardCharsets.UTF_8);
+			builtinUTF16 = BUILTIN.getBytes(StandardCharsets.UTF_16LE);
+		}
+		return utf8 ? builtinUTF8 : builtinUTF16;
+	}
+
+	/**
+	 * @param dictionary
+	 *            dictionary bytes
+	 * @return id Z-LIB stores in compressed data (Adler-32 of the dictionary)
+	 */
+	public static int id(byte[] dictionary) {
+		Adler32 adler = new Adler32();
+		adler.update(dictionary, 0, dictionary.length);
+		return (int) adler.getValue();
+	}
+
+	/**
+	 * Builds a dictionary from sample messages. Phrases of 1 to 3 words that show up in
+	 * more than one sample are scored by how many chars they would save and the best
+	 * are kept, skipping any already inside a better phrase
+	 *
+	 * @param samples
+	 *            messages like the ones that will be compressed
+	 * @param charset
+	 *            charset messages will be converted to bytes with
+	 * @param maxSize
+	 *            largest size of the dictionary in bytes
+	 * @return dictionary bytes, most useful phrases last
+	 */
+	public static byte[] train(Collection<String> samples, Charset charset, int maxSize) {
+
+		//count how many samples each phrase appears in
+		final Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (String sample : samples) {
+			String[] words = sample.split("(?<=\\s)"); //words keep their following whitespace
+			Set<String> seen = new HashSet<String>();
+
+			for (int x = 0; x < words.length; x++) {
+				StringBuilder phrase = new StringBuilder();
+				for (int y = x; y < words.length && y < x + MAXWORDS; y++) {
+					phrase.append(words[y]);
+					if (phrase.length() >= MINLENGTH)
+						seen.add(phrase.toString());
+				}
+			}
+
+			for (String phrase : seen) {
+				Integer c = counts.get(phrase);
+				counts.put(phrase, c == null ? 1 : c + 1);
+			}
+		}
+
+		//best phrases first, a phrase saves its length every time it repeats
+		List<String> phrases = new ArrayList<String>();
+		for (Map.Entry<String, Integer> e : counts.entrySet())
+			if (e.getValue() > 1)
+				phrases.add(e.getKey());
+
+		Collections.sort(phrases, new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+				long sa = (long) (counts.get(a) - 1) * a.length(), sb = (long) (counts.get(b) - 1) * b.length();
+				return sa != sb ? Long.compare(sb, sa) : a.compareTo(b);
+			}
+		});
+
+		//fill the dictionary, then reverse so the best phrases are closest to the message
+		List<String> chosen = new ArrayList<String>();
+		StringBuilder all = new StringBuilder();
+		int size = 0;
+		for (String phrase : phrases) {
+			if (all.indexOf(phrase) != -1)
+				continue; //a better phrase already covers it
+
+			if (size > maxSize - MINLENGTH)
+				break; //full
+			int bytes = phrase.getBytes(charset).length;
+			if (size + bytes > maxSize)
+				continue;
+
+			chosen.add(phrase);
+			all.append(phrase).append('\0');
+			size += bytes;
+		}
+
+		Collections.reverse(chosen);
+		StringBuilder dictionary = new StringBuilder();
+		for (String phrase : chosen)
+			dictionary.append(phrase);
+
+		return dictionary.toString().getBytes(charset);
+	}
+
+	/**
+	 * Command line tool to train a dictionary from text files and register it in a Quick Crypt settings file.
+	 * Usage: CompressionDictionary &lt;settings file&gt; &lt;sample file&gt;... , every line of a sample file is one message
+	 *
+	 * @param args
+	 *            settings file followed by sample files
+	 */
+	public static void main(String[] args) {
+
+		if (args.length < 2) {
+			System.err.println("Usage: CompressionDictionary <settings file> <sample file>...");
+			return;
+		}
+
+		try {
+			Context context = Context.standardContext();
+			context.addBinaryEncoder(new Emoji256());
+
+			File settings = new File(args[0]);
+			if (settings.exists()) {
+				Scanner in = new Scanner(settings);
+				context.load(in);
+				in.close();
+			}
+
+			List<String> samples = new ArrayList<String>();
+			for (int x = 1; x < args.length; x++)
+				samples.addAll(Files.readAllLines(new File(args[x]).toPath(), StandardCharsets.UTF_8));
+
+			int id = context.trainDictionary(samples);
+			PrintStream ps = new PrintStream(settings);
+			context.save(ps);
+			ps.close();
+
+			System.out.println("Trained dictionary " + Integer.toHexString(id) + " from " + samples.size() + " samples");
+		} catch (QCError | IOException e) {
+			System.err.println("Error: " + e.getMessage());
+		}
+	}
+}
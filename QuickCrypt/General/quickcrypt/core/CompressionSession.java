@@ -0,0 +1,243 @@
+package quickcrypt.core;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+
+/**
+ * Compression state shared by consecutive messages of one conversation
+ * <p>
+ * Every message is numbered, and the plain text of the messages before it (up to 32KB) is used as a Z-LIB
+ * preset dictionary, so words repeated between messages take almost no space.
+ * The session id, message number and the numbers of the messages in the dictionary are stored at the start
+ * of the compressed data so the receiving Context can rebuild the same dictionary, as long as it has decoded
+ * those messages. Z-LIB checks the Adler-32 of the dictionary, so a wrong dictionary is always detected
+ * <p>
+ * A compressed message only joins the history once commit() is called, after it was fully encoded, so a
+ * message that fails to encrypt or is encoded again after an edit never ends up in later dictionaries.
+ * If a receiver still missed messages, rebase() makes later messages use only the ones it has
+ *
+ * @author Adam Spiegel
+ *
+ */
+
+public class CompressionSession {
+
+	final static int WINDOW = 32768; //most previous text used as a dictionary
+	final static int HISTORY = 64; //most previous messages kept, to decode slightly older messages again
+
+	private final int id;
+	private int next; //number of the next message sent in this session
+	private final TreeMap<Integer, byte[]> messages = new TreeMap<Integer, byte[]>(); //message number -> last WINDOW bytes of plain text, committed or decoded
+	private int size; //bytes in messages
+
+	/**
+	 * @param id
+	 *            random id shared by the sender and receivers of the session
+	 */
+	public CompressionSession(int id) {
+		this.id = id;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Compress the next message of this session. The message is not part of the session until commit() is
+	 * called, so compressing again before that reuses the same message number
+	 *
+	 * @param in
+	 *            plain bytes
+	 * @return session id (4 bytes), message number, dictionary message numbers (1-5 bytes each) and Z-LIB data
+	 */
+	public synchronized byte[] compress(byte[] in) {
+
+		int seq = next;
+
+		//newest unbroken run of messages before seq, a rebase or a message never committed leaves a gap
+		int end = seq, first = seq;
+		if (!messages.headMap(seq, false).isEmpty()) {
+			end = messages.headMap(seq, false).lastKey() + 1;
+			first = end;
+			for (int size = 0; size < WINDOW && messages.containsKey(first - 1); size += messages.get(--first).length)
+				;
+		}
+
+		byte[] window = window(first, end);
+		byte[] body = window.length == 0 ? Compression.deflate(in) : Compression.deflate(in, window);
+
+		byte[] out = new byte[4 + 15 + body.length];
+		int o = writeHead(out, seq, first, end);
+		System.arraycopy(body, 0, out, o, body.length);
+
+		return Arrays.copyOf(out, o + body.length);
+	}
+
+	/**
+	 * Adds a compressed message to the session once it has been fully encoded, later messages can then use it
+	 * as their dictionary
+	 *
+	 * @param compressed
+	 *            data from compress()
+	 * @param in
+	 *            plain bytes that were compressed
+	 * @throws DataFormatException
+	 *             if compressed is not from this session
+	 */
+	public synchronized void commit(byte[] compressed, byte[] in) throws DataFormatException {
+
+		int[] head = readHead(compressed);
+		if (head[0] != id)
+			throw new DataFormatException("Message is from another session");
+
+		remember(head[1], in);
+		if (head[1] >= next)
+			next = head[1] + 1;
+	}
+
+	/**
+	 * Makes later messages use only messages up to received as their dictionary, for when the receivers never
+	 * got the messages after it. Message numbers keep counting up
+	 *
+	 * @param received
+	 *            number of the newest message every receiver has decoded, -1 if they have none
+	 */
+	public synchronized void rebase(int received) {
+		NavigableMap<Integer, byte[]> after = messages.tailMap(received, false);
+		for (byte[] m : after.values())
+			size -= m.length;
+		after.clear();
+	}
+
+	/**
+	 * @return number of the next message compressed in this session
+	 */
+	public synchronized int getNext() {
+		return next;
+	}
+
+	/**
+	 * Decompress a message of this session, the messages in its dictionary must have been committed or decompressed already
+	 *
+	 * @param in
+	 *            data from compress()
+	 * @param limit
+	 *            most uncompressed bytes allowed
+	 * @param progress
+	 *            told about progress of inflating (may be null)
+	 * @return plain bytes
+	 * @throws DataFormatException
+	 *             When an earlier message is missing, input was corrupted or is larger than limit uncompressed
+	 */
+	public synchronized byte[] decompress(byte[] in, long limit, Compression.Progress progress) throws DataFormatException {
+
+		int[] head = readHead(in);
+		int seq = head[1];
+		if (head[0] != id)
+			throw new DataFormatException("Message is from another session");
+
+		//every message in the dictionary must be known
+		for (int x = head[2]; x < head[3]; x++)
+			if (!messages.containsKey(x))
+				throw new DataFormatException("Message " + x + " of this session has not been decoded, the sender can rebase the session on older messages");
+
+		byte[] window = window(head[2], head[3]);
+		byte[] body = Arrays.copyOfRange(in, head[4], in.length);
+		byte[] out = Compression.inflate(body, Collections.singletonMap(CompressionDictionary.id(window), window), limit, progress);
+
+		remember(seq, out);
+		if (seq >= next)
+			next = seq + 1; //continuing this session sends after the newest message
+		return out;
+	}
+
+	/**
+	 * @return text of messages first to end (exclusive), at most the last WINDOW bytes
+	 */
+	private byte[] window(int first, int end) {
+
+		NavigableMap<Integer, byte[]> used = messages.subMap(first, true, end, false);
+		int size = 0;
+		for (byte[] m : used.values())
+			size += m.length;
+
+		byte[] window = new byte[Math.min(size, WINDOW)];
+		int o = window.length;
+		for (byte[] m : used.descendingMap().values()) { //newest text last
+			int len = Math.min(m.length, o);
+			System.arraycopy(m, m.length - len, window, o - len, len);
+			o -= len;
+			if (o == 0)
+				break;
+		}
+		return window;
+	}
+
+	/**
+	 * keep the end of a message for later windows and drop messages too old to be needed,
+	 * so a session never holds much more than WINDOW bytes however large its messages are
+	 */
+	private void remember(int seq, byte[] plain) {
+		if (plain.length > WINDOW) //a window never reaches further back
+			plain = Arrays.copyOfRange(plain, plain.length - WINDOW, plain.length);
+
+		byte[] old = messages.put(seq, plain);
+		size += plain.length - (old == null ? 0 : old.length);
+
+		while (messages.size() > HISTORY || size - messages.firstEntry().getValue().length >= WINDOW)
+			size -= messages.remove(messages.firstKey()).length;
+	}
+
+	/**
+	 * write id, seq, seq - end and end - first
+	 * @return index after the head
+	 */
+	private int writeHead(byte[] out, int seq, int first, int end) {
+		out[0] = (byte) (id >>> 24);
+		out[1] = (byte) (id >>> 16);
+		out[2] = (byte) (id >>> 8);
+		out[3] = (byte) id;
+
+		int o = 4;
+		for (int v : new int[] { seq, seq - end, end - first }) {
+			for (; v >= 0x80; v >>>= 7) //7 bits per byte
+				out[o++] = (byte) (v | 0x80);
+			out[o++] = (byte) v;
+		}
+		return o;
+	}
+
+	/**
+	 * @return session id, message number, first and end (exclusive) message numbers of the dictionary
+	 *         and index of the Z-LIB data
+	 * @throws DataFormatException
+	 *             if in is too short or the numbers are invalid
+	 */
+	static int[] readHead(byte[] in) throws DataFormatException {
+		if (in.length < 7)
+			throw new DataFormatException("Compressed data is incomplete");
+
+		int id = (in[0] & 0xFF) << 24 | (in[1] & 0xFF) << 16 | (in[2] & 0xFF) << 8 | (in[3] & 0xFF);
+		int[] v = new int[3]; //seq, seq - end, end - first
+		int x = 4;
+		for (int n = 0; n < 3; n++) {
+			for (int shift = 0;; shift += 7) {
+				if (x == in.length || shift > 28)
+					throw new DataFormatException("Invalid session message number");
+				v[n] |= (in[x] & 0x7F) << shift;
+				if ((in[x++] & 0x80) == 0)
+					break;
+			}
+			if (v[n] < 0)
+				throw new DataFormatException("Invalid session message number");
+		}
+
+		int end = v[0] - v[1], first = end - v[2];
+		if (end < 0 || first < 0 || v[2] > HISTORY)
+			throw new DataFormatException("Invalid session message number");
+
+		return new int[] { id, v[0], first, end, x };
+	}
+}
@@ -4,16 +4,25 @@ import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.StringSelection;
 import java.awt.datatransfer.Transferable;
 import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 
 import javax.imageio.ImageIO;
 
@@ -31,6 +40,13 @@ import javax.imageio.ImageIO;
 public class Context {
 	public static String frontHead = "<~`" + "E:";
 	public static String backHead = ":E" + "`~>";
+	private static final char[] HEADESCAPES = { ' ', '\n', '\u200B', '\u00A0', '\uFEFF' }; //put inside headers an encoder outputs, first one it can not output is used
+
+	final static String COMPRESSIONS = "0123456789zhflpdms"; //valid compression Base64Ids
+	final static int ADAPTIVESAMPLE = 16384; //size of each sample compressed to estimate the saving
+	final static double ADAPTIVESAVING = 0.03; //smallest saving worth compressing for
+	final static long RATIOFLOOR = 1L << 26; //output size below which maxDecompressionRatio is not checked
+	final static int MAXSESSIONS = 256; //most received compression sessions kept, least recently used are forgotten
 
 	public Hexadecimal hex;
 	
@@ -38,10 +54,15 @@ public class Context {
 
 	private BinaryEncoder[] binaryEncoders;
 	private Map<String, Encryptor> encryptors;
+	private Map<Integer, byte[]> dictionaries; //compression dictionary id -> dictionary
+	private Map<Integer, CompressionSession> sessions; //compression session id -> session, for sending and receiving, in order of use
+	private Map<String, CompressionSession> sessionNames; //sessions started by this user, written while holding sessions
 
 	private String encryption;
 	private char encoding;
 	private char compression;
+	private int dictionary; //id of dictionary for compression 'd', 0 for the built in dictionary
+	private String session; //name of session for compression 's', null if none
 	private int flags1;
 	private int flags2;
 	
@@ -49,6 +70,10 @@ public class Context {
 	public boolean ImgtoText; //TODO getter/setter
 	public boolean TexttoImg;
 	public boolean tryDecode;
+	public boolean adaptiveCompression; //store input raw when compression would barely help
+	public long maxDecompressedSize = 1L << 26; //largest message decompress will output, limits memory for untrusted input
+	public int maxDecompressionRatio = ModelCompression.MAXRATIO; //largest times bigger a message over RATIOFLOOR can get from decompress
+	public Compression.Progress decompressionProgress; //told about progress of long decompressions, may be null
 
 	public int imageEncodingBlockSize = 1;
 	public int paletteBits = 3;
@@ -70,10 +95,18 @@ public class Context {
 		ImgtoText = true;
 		TexttoImg = false;
 		tryDecode = true;
+		adaptiveCompression = true;
 
 		hex = new Hexadecimal();
 
 		encryptors = new HashMap<String, Encryptor>();
+		dictionaries = new HashMap<Integer, byte[]>();
+		sessions = new LinkedHashMap<Integer, CompressionSession>(16, 0.75f, true);
+		sessionNames = new ConcurrentHashMap<String, CompressionSession>();
+		for (boolean utf8 : new boolean[] { true, false }) {
+			byte[] d = CompressionDictionary.builtIn(utf8);
+			dictionaries.put(CompressionDictionary.id(d), d);
+		}
 		binaryEncoders = new BinaryEncoder[64];
 		
 		lock = new ReentrantLock();
@@ -97,10 +130,19 @@ public class Context {
 		ImgtoText = a.ImgtoText;
 		TexttoImg = a.TexttoImg;
 		tryDecode = a.tryDecode;
+		adaptiveCompression = a.adaptiveCompression;
+		maxDecompressedSize = a.maxDecompressedSize;
+		maxDecompressionRatio = a.maxDecompressionRatio;
+		decompressionProgress = a.decompressionProgress;
 
 		hex = a.hex;
 
 		encryptors = a.encryptors;
+		dictionaries = a.dictionaries;
+		dictionary = a.dictionary;
+		sessions = a.sessions;
+		sessionNames = a.sessionNames;
+		session = a.session;
 		binaryEncoders = a.binaryEncoders;
 		
 		lock = new ReentrantLock();
@@ -155,6 +197,8 @@ public class Context {
 		sc.addBinaryEncoder(new Hexadecimal());
 		sc.addBinaryEncoder(new Base64URL());
 		sc.addBinaryEncoder(new CJK4096());
+		sc.addBinaryEncoder(new Base32768());
+		sc.addBinaryEncoder(new Base85());
 
 		sc.addEncryptor(new SharedSecrets());
 
@@ -210,8 +254,14 @@ public class Context {
 	/**
 	 * Sets the compression to be used while encoding or decoding. If a
 	 * compression with that Base64Id has not been added, QCError will be
-	 * thrown. Note: Currently there are only two supported compression types,
-	 * 'z' and '0', '0' is no compression and 'z' is default ZLIB compression
+	 * thrown. Note: '0' is no compression, 'z' is default ZLIB compression,
+	 * '1'-'9' is ZLIB compression at that level ('1' fastest, '9' smallest),
+	 * 'h' is ZLIB Huffman only and 'f' is ZLIB filtered for noisy data like images,
+	 * 'l' is FastCompression for interactive use with large inputs,
+	 * 'p' is ZLIB compression in blocks on several threads for multi-megabyte inputs,
+	 * 'd' is ZLIB compression with a preset dictionary for short messages,
+	 * 'm' is ModelCompression for very short UTF_8 messages,
+	 * 's' is ZLIB compression primed with earlier messages of the session from setSession()
 	 * Note: This selection will not affect the decoding when there is an
 	 * available header with that information.
 	 * 
@@ -221,7 +271,7 @@ public class Context {
 	 */
 	public void setCompression(char cmp) throws QCError {
 
-		if (cmp != 'z' && cmp != '0')
+		if (COMPRESSIONS.indexOf(cmp) == -1)
 			throw new QCError("Unknown Compression type");
 
 		compression = cmp;
@@ -358,7 +408,10 @@ public class Context {
 	 * @throws QCError
 	 */
 	public String encodeRawToText(byte[] in) throws QCError {
-		return binaryEncode(encrypt(compress(in)));
+		byte[] compressed = compress(in);
+		String out = binaryEncode(encrypt(compressed));
+		commitSession(compressed, in); //only a fully encoded message joins the session
+		return out;
 	}
 
 	/**
@@ -370,7 +423,10 @@ public class Context {
 	 * @throws QCError
 	 */
 	public byte[] encodeRawToRaw(byte[] in) throws QCError {
-		return encrypt(compress(in));
+		byte[] compressed = compress(in);
+		byte[] out = encrypt(compressed);
+		commitSession(compressed, in);
+		return out;
 	}
 
 	/**
@@ -386,6 +442,109 @@ public class Context {
 		return decompress(decrypt(in));
 	}
 
+	/**
+	 * Wraps a stream so everything written to it is encrypted with the selected
+	 * encryptor, authenticating the info header like encrypt(). Encryptors
+	 * that support streams use little memory no matter how much is written,
+	 * shared secrets always do by streaming with an authenticated algorithm
+	 * even when CBC is selected. Note: Nothing is compressed
+	 * 
+	 * @param out
+	 *            stream to write encrypted bytes to, closed when the returned stream is closed
+	 * @return stream to write plain bytes to, must be closed to finish
+	 * @throws QCError
+	 *             if encryption can not start
+	 * @throws IOException
+	 *             if out fails
+	 */
+	public OutputStream encryptStream(OutputStream out) throws QCError, IOException {
+		if (encryption.equals("NO"))
+			return out;
+		return encryptors.get(encryption).encryptStream(out, getInfoHeader().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Wraps a stream from encryptStream() so reading it decrypts. Reading
+	 * throws an IOException if the data was changed
+	 * 
+	 * @param in
+	 *            stream of encrypted bytes, closed when the returned stream is closed
+	 * @return stream of decrypted bytes
+	 * @throws QCError
+	 *             if decryption can not start
+	 * @throws IOException
+	 *             if in fails
+	 */
+	public InputStream decryptStream(InputStream in) throws QCError, IOException {
+		if (encryption.equals("NO"))
+			return in;
+		return encryptors.get(encryption).decryptStream(in, getInfoHeader().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Encodes a stream of any size, such as a large file, starting with the
+	 * info header. Both streams are closed when done, out is left open after
+	 * an error. Note: Streams are
+	 * encrypted but not compressed or text encoded
+	 * 
+	 * @param in
+	 *            plain bytes
+	 * @param out
+	 *            stream to write header and encrypted bytes to
+	 * @throws QCError
+	 *             if encryption failed
+	 * @throws IOException
+	 *             if either stream fails
+	 */
+	public void encodeStream(InputStream in, OutputStream out) throws QCError, IOException {
+
+		Context context = new Context(this); //same settings without compression
+		context.compression = '0';
+		context.flags1 &= ~4;
+
+		out.write(context.getInfoHeader().getBytes(StandardCharsets.UTF_8));
+		copy(in, context.encryptStream(out));
+	}
+
+	/**
+	 * Decodes a stream from encodeStream(), using the settings in its header.
+	 * Both streams are closed when done, out is left open after an error
+	 * 
+	 * @param in
+	 *            header and encrypted bytes
+	 * @param out
+	 *            stream to write plain bytes to, some may be written before an error is found
+	 * @throws QCError
+	 *             if the header is invalid or decryption can not start
+	 * @throws IOException
+	 *             if either stream fails or the data was changed
+	 */
+	public void decodeStream(InputStream in, OutputStream out) throws QCError, IOException {
+
+		byte[] bhead = new byte[6];
+		new DataInputStream(in).readFully(bhead);
+		Context context = new Context(new String(bhead, StandardCharsets.UTF_8), this);
+		if (context.compression != '0')
+			throw new QCError("Compressed streams are not supported");
+
+		copy(context.decryptStream(in), out);
+	}
+
+	/**
+	 * copy all of in to out, then close both. out is left open after an
+	 * error, closing an encrypting stream would finish a cut off stream
+	 */
+	private static void copy(InputStream in, OutputStream out) throws IOException {
+		try {
+			byte[] buf = new byte[65536];
+			for (int read; (read = in.read(buf)) != -1;)
+				out.write(buf, 0, read);
+		} finally {
+			in.close();
+		}
+		out.close();
+	}
+
 	/**
 	 * Searches for the last encoded Quick Crypt message in the input text. If
 	 * and when the message is found, it is decoded and returned.
@@ -447,13 +606,30 @@ public class Context {
 	 */
 	public String binaryEncode(byte[] in) throws QCError {
 
+		BinaryEncoder enc = selectedBinaryEncoder();
+
+		if (in.length >= ParallelBinaryEncoder.DEFAULT_THRESHOLD) //large input, split between threads
+			enc = new ParallelBinaryEncoder(enc);
+
+		return enc.to(in);
+	}
+
+	/**
+	 * Get the binary encoder selected for this context
+	 * 
+	 * @return selected encoder
+	 * @throws QCError
+	 *             if the selected encoder was never added
+	 */
+	private BinaryEncoder selectedBinaryEncoder() throws QCError {
+
 		if (encoding == 'X')
-			return hex.to(in);
+			return hex;
 
 		int idx = Base64URL.fromChar(encoding);
 
 		if (idx != -1 && binaryEncoders[idx] != null)
-			return binaryEncoders[idx].to(in);
+			return binaryEncoders[idx];
 
 		throw new QCError("Unknown binary encoder selected");
 	}
@@ -474,11 +650,14 @@ public class Context {
 		if (encryption.equals("NO"))
 			return in;
 
-		return encryptors.get(encryption).encrypt(in);
+		return encryptors.get(encryption).encrypt(in, getInfoHeader().getBytes(StandardCharsets.UTF_8)); //header can not be changed unnoticed
 	}
 
 	/**
 	 * Compress a byte array to another byte array using selected compressor.
+	 * With compression 's' the message is not added to the session until
+	 * commitSession() is called, which encodeRawToText() and encodeRawToRaw()
+	 * do once the message is encoded
 	 * 
 	 * @param in
 	 *            bytes to compress
@@ -490,10 +669,64 @@ public class Context {
 		if (in == null || in.length == 0)
 			throw new QCError("Compressor found empty input");
 
-		if (compression == 'z')
-			return Compression.deflate(in);
+		flags1 &= ~4; //flag for input stored without compression
+		if (compression == '0')
+			return in;
+		if (compression == 's') //every message must reach the receivers' sessions, so never stored raw
+			return compressSelected(in);
+
+		if (adaptiveCompression && in.length > ADAPTIVESAMPLE * 3) {
+			//compress samples from the beginning, middle and end to estimate the saving
+			byte[] sample = new byte[ADAPTIVESAMPLE * 3];
+			System.arraycopy(in, 0, sample, 0, ADAPTIVESAMPLE);
+			System.arraycopy(in, (in.length - ADAPTIVESAMPLE) / 2, sample, ADAPTIVESAMPLE, ADAPTIVESAMPLE);
+			System.arraycopy(in, in.length - ADAPTIVESAMPLE, sample, ADAPTIVESAMPLE * 2, ADAPTIVESAMPLE);
+
+			if (compressSelected(sample).length > sample.length * (1 - ADAPTIVESAVING)) {
+				flags1 |= 4; //already compressed or random, like PNG bytes or ciphertext
+				return in;
+			}
+		}
+
+		byte[] out = compressSelected(in);
+		if (adaptiveCompression && out.length >= in.length) { //estimate was wrong or input was small
+			flags1 |= 4;
+			return in;
+		}
+		return out;
+	}
+
+	/**
+	 * Compress with the selected compressor, without checking if it helps
+	 * 
+	 * @param in
+	 *            bytes to compress
+	 * @return Compressed bytes
+	 */
+	private byte[] compressSelected(byte[] in) throws QCError {
 
-		return in;
+		switch (compression) {
+		case 'z':
+			return Compression.deflate(in);
+		case 'h':
+			return Compression.deflate(in, Deflater.DEFAULT_COMPRESSION, Deflater.HUFFMAN_ONLY);
+		case 'f':
+			return Compression.deflate(in, Deflater.DEFAULT_COMPRESSION, Deflater.FILTERED);
+		case 'l':
+			return FastCompression.compress(in);
+		case 'p':
+			return Compression.deflateParallel(in);
+		case 'd':
+			return Compression.deflate(in, dictionary == 0 ? CompressionDictionary.builtIn((flags1 & 1) != 0) : dictionaries.get(dictionary));
+		case 'm':
+			return ModelCompression.compress(in);
+		case 's':
+			if (session == null)
+				throw new QCError("No compression session selected");
+			return sessionNames.get(session).compress(in);
+		default: //level '1'-'9'
+			return Compression.deflate(in, compression - '0', Deflater.DEFAULT_STRATEGY);
+		}
 	}
 
 	/**
@@ -508,15 +741,12 @@ public class Context {
 	 */
 	public byte[] binaryDecode(String in) throws QCError {
 
-		if (encoding == 'X')
-			return hex.from(in);
-
-		int idx = Base64URL.fromChar(encoding);
+		BinaryEncoder enc = selectedBinaryEncoder();
 
-		if (idx != -1 && binaryEncoders[idx] != null)
-			return binaryEncoders[idx].from(in);
+		if (in.length() >= ParallelBinaryEncoder.DEFAULT_THRESHOLD) //large input, split between threads
+			enc = new ParallelBinaryEncoder(enc);
 
-		throw new QCError("Unknown binary encoder selected");
+		return enc.from(in);
 	}
 
 	/**
@@ -570,7 +800,7 @@ public class Context {
 
 		if (encryption.equals("NO"))
 			return in;
-		return encryptors.get(encryption).decrypt(in);
+		return encryptors.get(encryption).decrypt(in, getInfoHeader().getBytes(StandardCharsets.UTF_8));
 	}
 
 	/**
@@ -584,13 +814,32 @@ public class Context {
 	 * @throws QCError
 	 */
 	public byte[] decompress(byte[] in) throws QCError {
-		if (compression == 'z')
-			try {
-				return Compression.inflate(in);
-			} catch (DataFormatException e) {
-				throw new QCError("decompression failed: " + e.getMessage());
+		if (compression == '0' || (flags1 & 4) != 0) //not compressed or stored without compression
+			return in;
+
+		//never trust the sizes in the data, small messages may be as repetitive as the compressor allows
+		long limit = maxDecompressedSize;
+		if (limit > RATIOFLOOR)
+			limit = Math.max(RATIOFLOOR, Math.min(limit, (long) in.length * maxDecompressionRatio));
+
+		try {
+			switch (compression) {
+			case 'l':
+				return FastCompression.decompress(in, limit);
+			case 'p':
+				return Compression.inflateParallel(in, limit);
+			case 'd': //dictionary id is in the compressed data
+				return Compression.inflate(in, dictionaries, limit, decompressionProgress);
+			case 'm':
+				return ModelCompression.decompress(in, limit);
+			case 's':
+				return decompressSession(in, limit);
+			default: //every ZLIB level and strategy inflates the same way
+				return Compression.inflate(in, null, limit, decompressionProgress);
 			}
-		return in;
+		} catch (DataFormatException e) {
+			throw new QCError("decompression failed: " + e.getMessage());
+		}
 	}
 
 	/**
@@ -607,7 +856,36 @@ public class Context {
 			flags1 ^= 2;
 
 		//encode to text and add header and footer with information of the current context
-		return frontHead + getInfoHeader() + encodeRawToText(stringToBytes(in)) + backHead;
+		String body = encodeRawToText(stringToBytes(in)); //before the header, compression sets flags
+		return frontHead + getInfoHeader() + escapeHeads(body) + backHead;
+	}
+
+	/**
+	 * Breaks up any frontHead or backHead that the selected encoder wrote in the body, so decodeText can
+	 * still find the real ones. A character the encoder never outputs is put inside each one, which
+	 * decoding skips like any other invalid character. Only character sets with every header character
+	 * (such as all printable ASCII) can need this
+	 * 
+	 * @param body
+	 *            encoded message
+	 * @return body that can not be mistaken for a header or footer
+	 * @throws QCError
+	 *             if the encoder could output every character that can be used to escape
+	 */
+	private String escapeHeads(String body) throws QCError {
+
+		if (body.indexOf(frontHead) == -1 && body.indexOf(backHead) == -1 && !body.endsWith(frontHead.substring(0, 4)))
+			return body;
+
+		BinaryEncoder enc = selectedBinaryEncoder();
+		for (char esc : HEADESCAPES)
+			if (!enc.isSymbol(esc)) {
+				body = body.replace(frontHead, frontHead.substring(0, 3) + esc + frontHead.substring(3))
+						.replace(backHead, backHead.substring(0, 2) + esc + backHead.substring(2));
+				return body.endsWith(frontHead.substring(0, 4)) ? body + esc : body; //would join with the footer
+			}
+
+		throw new QCError("Encoded message contains \"" + frontHead + "\" or \"" + backHead + "\" and can not be escaped");
 	}
 
 	/**
@@ -625,7 +903,8 @@ public class Context {
 		flags1 |= 2; //tell context we are encoding an image
 
 		//convert image to bytes than encode like anything else
-		return frontHead + getInfoHeader() + encodeRawToText(ImageEncoder.ImgToBin(in, imageFormat)) + backHead;
+		String body = encodeRawToText(ImageEncoder.ImgToBin(in, imageFormat)); //before the header, compression sets flags
+		return frontHead + getInfoHeader() + escapeHeads(body) + backHead;
 	}
 
 	/**
@@ -643,8 +922,8 @@ public class Context {
 		if ((flags1 & 2) != 0) //tell context we are encoding text
 			flags1 ^= 2;
 
-		byte[] head = getInfoHeader().getBytes(StandardCharsets.UTF_8); //convert ascii header to UTF_8 bytes for export
 		byte[] body = encodeRawToRaw(stringToBytes(in)); //encode input to body, this is the main encoding
+		byte[] head = getInfoHeader().getBytes(StandardCharsets.UTF_8); //convert ascii header to UTF_8 bytes for export, after compression sets flags
 
 		//combine head and body into toenc
 		byte[] toenc = new byte[head.length + body.length];
@@ -666,8 +945,8 @@ public class Context {
 
 		flags1 |= 2; //tell context we are encoding an image
 
-		byte[] head = getInfoHeader().getBytes(StandardCharsets.UTF_8); //convert ascii header to UTF_8 bytes for export
 		byte[] body = encodeRawToRaw(ImageEncoder.ImgToBin(in, imageFormat)); //convert input to bytes than encode as Raw and store in body
+		byte[] head = getInfoHeader().getBytes(StandardCharsets.UTF_8); //convert ascii header to UTF_8 bytes for export, after compression sets flags
 
 		//combine head and body into toenc
 		byte[] toenc = new byte[head.length + body.length];
@@ -912,8 +1191,15 @@ public class Context {
 		ps.println("Encode Images as Text="+ImgtoText);
 		ps.println("Encode Text as Images="+TexttoImg);
 		ps.println("Attempt to Decode="+tryDecode);
+		ps.println("Adaptive Compression="+adaptiveCompression);
+		ps.println("Max Decompressed Size="+maxDecompressedSize);
+		ps.println("Max Decompression Ratio="+maxDecompressionRatio);
 		ps.println("Image Block Width="+imageEncodingBlockSize);
 		ps.println("Bits per Image Block="+paletteBits);
+		for(Map.Entry<Integer, byte[]> d : dictionaries.entrySet())
+			if(d.getKey()!=CompressionDictionary.id(CompressionDictionary.builtIn(true))&&d.getKey()!=CompressionDictionary.id(CompressionDictionary.builtIn(false)))
+				ps.println("Compression Dictionary="+hex.to(d.getValue()));
+		ps.println("Selected Dictionary="+Integer.toHexString(dictionary));
 		ps.println("Encryptors");
 		for(Encryptor e : encryptors.values())
 		{
@@ -955,6 +1241,18 @@ public class Context {
 				case "Attempt to Decode":
 					tryDecode = Boolean.parseBoolean(next);
 					break;
+
+				case "Adaptive Compression":
+					adaptiveCompression = Boolean.parseBoolean(next);
+					break;
+
+				case "Max Decompressed Size":
+					maxDecompressedSize = Long.parseLong(next);
+					break;
+
+				case "Max Decompression Ratio":
+					maxDecompressionRatio = Integer.parseInt(next);
+					break;
 					
 				case "Image Block Width":
 					imageEncodingBlockSize = Integer.parseInt(next);
@@ -963,6 +1261,14 @@ public class Context {
 				case "Bits per Image Block":
 					paletteBits = Integer.parseInt(next);
 					break;
+
+				case "Compression Dictionary":
+					addDictionary(hex.from(next));
+					break;
+
+				case "Selected Dictionary":
+					setDictionary((int) Long.parseLong(next, 16));
+					break;
 			}
 		}
 		
@@ -976,4 +1282,165 @@ public class Context {
 	public char getCompression() {
 		return compression;
 	}
+
+	/**
+	 * Adds a dictionary for compression 'd', messages compressed with it can
+	 * then be decompressed by this context and its sub contexts
+	 * 
+	 * @param d
+	 *            dictionary bytes, up to 32KB
+	 * @return id of the dictionary
+	 * @see CompressionDictionary
+	 */
+	public int addDictionary(byte[] d) {
+		int id = CompressionDictionary.id(d);
+		dictionaries.put(id, d);
+		return id;
+	}
+
+	/**
+	 * Selects the dictionary used to encode with compression 'd'
+	 * 
+	 * @param id
+	 *            id of an added dictionary, or 0 for the built in dictionary
+	 * @throws QCError
+	 *             if no dictionary with that id was added
+	 */
+	public void setDictionary(int id) throws QCError {
+		if (id != 0 && !dictionaries.containsKey(id))
+			throw new QCError("Unknown compression dictionary");
+		dictionary = id;
+	}
+
+	public int getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Selects the session used to encode with compression 's'. A new name starts a new session
+	 * with a random id, messages must then be decoded by receivers in order
+	 * 
+	 * @param name
+	 *            name of the session, null to select none
+	 */
+	public void setSession(String name) {
+		synchronized (sessions) {
+			if (name != null && !sessionNames.containsKey(name)) {
+				int id;
+				do
+					id = ByteBuffer.wrap(Cryptography.randomBytes(4)).getInt();
+				while (sessions.containsKey(id));
+
+				CompressionSession s = new CompressionSession(id);
+				sessions.put(id, s);
+				sessionNames.put(name, s);
+			}
+		}
+		session = name;
+	}
+
+	public String getSession() {
+		return session;
+	}
+
+	/**
+	 * Adds a message compressed with compression 's' to its session, so later
+	 * messages can use it as their dictionary. Does nothing for other
+	 * compressions or input that was stored uncompressed
+	 * 
+	 * @param compressed
+	 *            output of compress()
+	 * @param in
+	 *            bytes that were compressed
+	 * @throws QCError
+	 *             if compressed is not from the selected session
+	 */
+	public void commitSession(byte[] compressed, byte[] in) throws QCError {
+		if (compression != 's' || (flags1 & 4) != 0)
+			return;
+
+		try {
+			sessionNames.get(session).commit(compressed, in);
+		} catch (DataFormatException e) {
+			throw new QCError(e.getMessage());
+		}
+	}
+
+	/**
+	 * Makes later messages of the selected session use only messages up to
+	 * received as their dictionary, for when receivers missed the messages
+	 * after it
+	 * 
+	 * @param received
+	 *            number of the newest message every receiver has decoded, -1
+	 *            if they have none
+	 * @throws QCError
+	 *             if no session is selected
+	 */
+	public void rebaseSession(int received) throws QCError {
+		if (session == null)
+			throw new QCError("No compression session selected");
+		sessionNames.get(session).rebase(received);
+	}
+
+	/**
+	 * Decompress a message of any session. A session never seen before is only
+	 * kept once its first message decodes, so random ids in untrusted input can
+	 * not fill the session list
+	 * 
+	 * @param in
+	 *            data from CompressionSession.compress()
+	 * @param limit
+	 *            most uncompressed bytes allowed
+	 * @return plain bytes
+	 * @throws DataFormatException
+	 *             if the message can not be decompressed
+	 */
+	private byte[] decompressSession(byte[] in, long limit) throws DataFormatException {
+
+		int id = CompressionSession.readHead(in)[0];
+		CompressionSession s;
+		synchronized (sessions) {
+			s = sessions.get(id);
+		}
+		if (s != null)
+			return s.decompress(in, limit, decompressionProgress);
+
+		s = new CompressionSession(id);
+		byte[] out = s.decompress(in, limit, decompressionProgress);
+
+		synchronized (sessions) {
+			if (!sessions.containsKey(id)) { //another thread may have decoded the first message too
+				sessions.put(id, s);
+
+				//forget the least recently used received sessions, sessions started here are always kept
+				Iterator<CompressionSession> it = sessions.values().iterator();
+				while (sessions.size() > MAXSESSIONS && it.hasNext())
+					if (!sessionNames.containsValue(it.next()))
+						it.remove();
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Trains a dictionary from sample messages, then adds and selects it.
+	 * Strings are converted to bytes the same way as when encoding text
+	 * 
+	 * @param samples
+	 *            messages like the ones that will be compressed
+	 * @return id of the new dictionary
+	 * @throws QCError
+	 *             if the samples have no common text
+	 */
+	public int trainDictionary(Collection<String> samples) throws QCError {
+		Charset charset = (flags1 & 1) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.UTF_16LE;
+		byte[] d = CompressionDictionary.train(samples, charset, CompressionDictionary.MAXSIZE);
+		if (d.length == 0)
+			throw new QCError("Samples have no common text for a dictionary");
+
+		int id = addDictionary(d);
+		setDictionary(id);
+		return id;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,254 @@
+package quickcrypt.core;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+/**
+ * Fast LZ77 compression of byte arrays, much faster than Z-LIB with a somewhat worse ratio
+ * <p>
+ * Output is the uncompressed length (4 bytes BigEndian) followed by one block in the LZ4 block format:
+ * sequences of a token byte (literal count and match length, 4 bits each), extra length bytes,
+ * literals, 2 byte LittleEndian match offset and extra match length bytes.
+ * Matches are found with a single hash table of 4 byte prefixes and no chains
+ *
+ * @author Adam Spiegel
+ *
+ */
+
+public class FastCompression {
+
+	final static int MINMATCH = 4; //shortest match that can be stored
+	final static int LASTLITERALS = 5; //last bytes are always literals
+	final static int MFLIMIT = 12; //no match can start this close to the end
+	final static int MAXOFFSET = 65535; //furthest back a match can be
+	final static int MAXHASHLOG = 16; //largest hash table is 2^16 entries
+	final static int SKIPSTRENGTH = 6; //search goes faster through data with no matches
+
+	/**
+	 * Largest size that compress can output
+	 *
+	 * @param len
+	 *            number of uncompressed bytes
+	 * @return maximum number of compressed bytes
+	 */
+	public static int maxCompressedLength(int len) {
+		return (int) Math.min(len + len / 255L + 16 + 4, Compression.MAXARRAY);
+	}
+
+	/**
+	 * Compress bytes, never fails
+	 *
+	 * @param input
+	 *            bytes to compress
+	 * @return compressed bytes
+	 */
+	public static byte[] compress(byte[] input) {
+
+		int len = input.length;
+		byte[] out = new byte[maxCompressedLength(len)];
+
+		out[0] = (byte) (len >>> 24); //uncompressed length
+		out[1] = (byte) (len >>> 16);
+		out[2] = (byte) (len >>> 8);
+		out[3] = (byte) len;
+		int o = 4;
+
+		int anchor = 0; //first byte that has not been written
+		if (len >= MFLIMIT + 1) {
+
+			int hashLog = Math.min(MAXHASHLOG, Math.max(8, 32 - Integer.numberOfLeadingZeros(len))); //small inputs get small tables
+			int[] table = new int[1 << hashLog]; //hash of 4 bytes -> last position they were found
+			int shift = 32 - hashLog;
+			int matchLimit = len - LASTLITERALS;
+			int searchLimit = len - MFLIMIT;
+
+			int x = 1;
+			table[hash(input, 0, shift)] = 0;
+
+			search: while (x < searchLimit) {
+
+				///find a match
+				int ref, attempts = 1 << SKIPSTRENGTH;
+				while (true) {
+					int seq = readInt(input, x);
+					int h = (seq * -1640531535) >>> shift; //Knuth multiplicative hash
+					ref = table[h];
+					table[h] = x;
+					if (x - ref <= MAXOFFSET && readInt(input, ref) == seq)
+						break;
+
+					x += attempts++ >>> SKIPSTRENGTH; //skip further when nothing matches
+					if (x >= searchLimit)
+						break search;
+				}
+
+				while (x > anchor && ref > 0 && input[x - 1] == input[ref - 1]) { //extend match backwards
+					x--;
+					ref--;
+				}
+
+				///extend match forwards, 4 bytes at a time then 1 at a time
+				int end = x + MINMATCH;
+				int r = ref + MINMATCH;
+				while (end < matchLimit - 3 && readInt(input, end) == readInt(input, r)) {
+					end += 4;
+					r += 4;
+				}
+				while (end < matchLimit && input[end] == input[r]) {
+					end++;
+					r++;
+				}
+
+				o = writeSequence(input, anchor, x - anchor, x - ref, end - x - MINMATCH, out, o);
+				anchor = x = end;
+
+				if (x < searchLimit) //this position will likely be looked up next time
+					table[hash(input, x - 2, shift)] = x - 2;
+			}
+		}
+
+		o = writeLiterals(input, anchor, len - anchor, out, o); //last sequence is only literals
+
+		return Arrays.copyOf(out, o);
+	}
+
+	/**
+	 * write a sequence of literals followed by a match
+	 * @return position after the sequence
+	 */
+	private static int writeSequence(byte[] in, int lit, int litLen, int offset, int matchLen, byte[] out, int o) {
+
+		int token = o++;
+		out[token] = (byte) (Math.min(litLen, 15) << 4 | Math.min(matchLen, 15));
+
+		if (litLen >= 15)
+			o = writeLength(litLen - 15, out, o);
+		System.arraycopy(in, lit, out, o, litLen);
+		o += litLen;
+
+		out[o++] = (byte) offset; //LittleEndian offset
+		out[o++] = (byte) (offset >>> 8);
+
+		if (matchLen >= 15)
+			o = writeLength(matchLen - 15, out, o);
+		return o;
+	}
+
+	/**
+	 * write the last sequence with only literals
+	 * @return position after the sequence
+	 */
+	private static int writeLiterals(byte[] in, int lit, int litLen, byte[] out, int o) {
+
+		out[o++] = (byte) (Math.min(litLen, 15) << 4);
+		if (litLen >= 15)
+			o = writeLength(litLen - 15, out, o);
+		System.arraycopy(in, lit, out, o, litLen);
+		return o + litLen;
+	}
+
+	/**
+	 * write extra length bytes, 255 means another byte follows
+	 * @return position after the bytes
+	 */
+	private static int writeLength(int len, byte[] out, int o) {
+		for (; len >= 255; len -= 255)
+			out[o++] = (byte) 255;
+		out[o++] = (byte) len;
+		return o;
+	}
+
+	private static int readInt(byte[] in, int x) {
+		return (in[x] & 0xFF) << 24 | (in[x + 1] & 0xFF) << 16 | (in[x + 2] & 0xFF) << 8 | (in[x + 3] & 0xFF);
+	}
+
+	private static int hash(byte[] in, int x, int shift) {
+		return (readInt(in, x) * -1640531535) >>> shift; //Knuth multiplicative hash
+	}
+
+	/**
+	 * Decompress bytes made by compress()
+	 *
+	 * @param input
+	 *            compressed bytes
+	 * @return uncompressed bytes
+	 * @throws DataFormatException
+	 *             When input was not properly compressed or was corrupted.
+	 */
+	public static byte[] decompress(byte[] input) throws DataFormatException {
+		return decompress(input, Compression.MAXARRAY);
+	}
+
+	/**
+	 * Decompress bytes made by compress(), unless the uncompressed size is over a limit
+	 *
+	 * @param input
+	 *            compressed bytes
+	 * @param limit
+	 *            most uncompressed bytes allowed
+	 * @return uncompressed bytes
+	 * @throws DataFormatException
+	 *             When input was not properly compressed, was corrupted or is larger than limit uncompressed.
+	 */
+	public static byte[] decompress(byte[] input, long limit) throws DataFormatException {
+
+		if (input.length < 5)
+			throw new DataFormatException("Compressed data is incomplete");
+
+		int len = readInt(input, 0);
+		if (len < 0 || len > (input.length - 4) * 255L) //no block can expand more than this
+			throw new DataFormatException("Invalid uncompressed length");
+		if (len > limit)
+			throw new DataFormatException("Decompressed data is larger than the limit of " + limit + " bytes");
+
+		byte[] out = new byte[len];
+		int x = 4, o = 0;
+
+		try {
+			while (true) {
+				int token = input[x++] & 0xFF;
+
+				///literals
+				int litLen = token >>> 4;
+				if (litLen == 15)
+					for (int b = 255; b == 255; litLen += b)
+						b = input[x++] & 0xFF;
+
+				if (litLen > input.length - x || litLen > len - o)
+					throw new DataFormatException("Invalid literal length");
+				System.arraycopy(input, x, out, o, litLen);
+				x += litLen;
+				o += litLen;
+
+				if (x == input.length) //last sequence has no match
+					break;
+
+				///match
+				int offset = (input[x] & 0xFF) | (input[x + 1] & 0xFF) << 8;
+				x += 2;
+
+				int matchLen = token & 0xF;
+				if (matchLen == 15)
+					for (int b = 255; b == 255; matchLen += b)
+						b = input[x++] & 0xFF;
+				matchLen += MINMATCH;
+
+				if (offset == 0 || offset > o || matchLen > len - o)
+					throw new DataFormatException("Invalid match");
+
+				int ref = o - offset;
+				if (offset >= matchLen) {
+					System.arraycopy(out, ref, out, o, matchLen);
+					o += matchLen;
+				} else //overlapping match repeats the last bytes
+					for (int end = o + matchLen; o < end;)
+						out[o++] = out[ref++];
+			}
+		} catch (ArrayIndexOutOfBoundsException e) { //lengths ran past the end of input
+			throw new DataFormatException("Compressed data is incomplete");
+		}
+
+		if (o != len)
+			throw new DataFormatException("Compressed data is incomplete");
+		return out;
+	}
+}
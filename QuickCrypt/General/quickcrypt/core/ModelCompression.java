@@ -0,0 +1,307 @@
+package quickcrypt.core;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+
+/**
+ * Compression for very short messages with a fixed order-2 context model and a binary arithmetic coder
+ * <p>
+ * Each byte is coded one bit at a time (most significant first). The chance of each bit is looked up from
+ * the previous 2 bytes and the bits of the current byte so far. Chances were counted once from built in
+ * English chat text and never change, so there is no block or table overhead in the output,
+ * only the message length (1 byte for messages under 128 bytes) and the coded bits.
+ * Contexts seen less often in training fall back to the previous byte only, then to no context at all
+ * <p>
+ * Works best on UTF_8 English text, other input still works but may grow
+ *
+ * @author Adam Spiegel
+ *
+ */
+
+public class ModelCompression {
+
+	final static int PROBBITS = 12; //precision of chances
+	final static int PROBMAX = 1 << PROBBITS;
+	final static int BLEND = 2; //weight of the lower order when mixing chances, in counts
+	final static int MAXRATIO = 2900; //8 bits at the best chance take more than 1/2900 of a byte
+
+	/// chance of a 1 bit * PROBMAX, by context
+	private static final short[] ORDER1 = new short[1 << 16]; //previous byte << 8 | bits so far
+	private static short[] order2Probs; //found by hashing previous 2 bytes << 16 | previous byte << 8 | bits so far
+	private static int[] order2Keys; //key + 1 for each entry in order2Probs, 0 if empty
+	private static int order2Shift;
+
+	/// lines of common chat text used to count chances, each line starts with no context
+	private static final String TRAINING =
+			"Hey, how are you doing today?\n"
+			+"I'm good, thanks! How about you?\n"
+			+"Can you send me the file when you get a chance?\n"
+			+"Sure, I will send it over in a few minutes.\n"
+			+"Let me know if you have any questions.\n"
+			+"Thanks for the update, I really appreciate it.\n"
+			+"What time is the meeting tomorrow?\n"
+			+"The meeting is at 10:30 in the morning.\n"
+			+"I don't think that is going to work for me.\n"
+			+"Are you free for lunch on Friday?\n"
+			+"Yes, that sounds great. See you then!\n"
+			+"Sorry, I'm running a little late.\n"
+			+"No problem, take your time.\n"
+			+"Did you get my email about the project?\n"
+			+"I just saw it, I'll take a look this afternoon.\n"
+			+"Please call me when you are back in the office.\n"
+			+"The new password is in the shared folder.\n"
+			+"Can we talk about this later tonight?\n"
+			+"I think we should move the deadline to next week.\n"
+			+"That makes sense to me, let's do it.\n"
+			+"Here is the link to the document: https://www.example.com/docs\n"
+			+"Do you know where the keys are?\n"
+			+"They should be on the table by the door.\n"
+			+"Happy birthday! Hope you have a wonderful day.\n"
+			+"Thank you so much, that's really nice of you.\n"
+			+"I'll be there in 5 minutes.\n"
+			+"Ok, sounds good.\n"
+			+"Yeah, I know what you mean.\n"
+			+"We need to finish this before the end of the day.\n"
+			+"Could you check the numbers again? Something looks wrong.\n"
+			+"You're right, I made a mistake. I fixed it now.\n"
+			+"Where are you right now?\n"
+			+"At home, just finished dinner.\n"
+			+"Don't forget to bring your laptop.\n"
+			+"I have a question about the report from last week.\n"
+			+"The address is 1234 Main Street, Apartment 5.\n"
+			+"My phone number is 555-0123, call me anytime.\n"
+			+"Good morning! Did you sleep well?\n"
+			+"Good night, talk to you tomorrow.\n"
+			+"This is important, please keep it between us.\n"
+			+"I love it, thank you!\n"
+			+"What do you want to do this weekend?\n"
+			+"Maybe we could go see a movie or something.\n"
+			+"I'm not sure yet, I will let you know.\n"
+			+"Just wanted to check in and see how things are going.\n"
+			+"Everything is fine here, nothing new.\n"
+			+"LOL that is so funny.\n"
+			+"OK, I'll do that right now.\n"
+			+"Please don't share this with anyone else.\n"
+			+"The code for the door is 4821.\n"
+			+"When will you be back?\n"
+			+"Probably around 6 or 7 tonight.\n"
+			+"Can you pick up some milk and bread on the way home?\n"
+			+"Meet me at the usual place at noon.\n"
+			+"I sent you the money, let me know when you get it.\n"
+			+"Got it, thanks!\n"
+			+"Yes\n"
+			+"No\n"
+			+"Thanks\n"
+			+"See you soon\n";
+
+	static {
+		train(TRAINING.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Count bits in the training text and build the chance tables
+	 */
+	private static void train(byte[] text) {
+
+		int[][] count0 = new int[256][2];
+		int[][] count1 = new int[2][1 << 16]; //[bit][context], flat so training does not make 65536 arrays
+		Map<Integer, int[]> count2 = new HashMap<Integer, int[]>();
+
+		int c1 = 0, c2 = 0;
+		for (byte b : text) {
+			for (int node = 1, bit = 7; bit >= 0; bit--) {
+				int y = (b >>> bit) & 1;
+				count0[node][y]++;
+				count1[y][c1 << 8 | node]++;
+
+				int key = c2 << 16 | c1 << 8 | node;
+				int[] c = count2.get(key);
+				if (c == null)
+					count2.put(key, c = new int[2]);
+				c[y]++;
+
+				node = node << 1 | y;
+			}
+
+			c2 = c1;
+			c1 = b & 0xFF;
+			if (b == '\n')
+				c1 = c2 = 0; //every line is a separate message
+		}
+
+		///mix each order with the one below it
+		double[] p0 = new double[256];
+		for (int node = 1; node < 256; node++)
+			p0[node] = blend(count0[node][0], count0[node][1], 0.5);
+
+		double[] p1 = new double[1 << 16];
+		for (int x = 0; x < p1.length; x++) {
+			p1[x] = blend(count1[0][x], count1[1][x], p0[x & 0xFF]);
+			ORDER1[x] = toProb(p1[x]);
+		}
+
+		int bits = 32 - Integer.numberOfLeadingZeros(count2.size() * 2); //table at most half full
+		order2Shift = 32 - bits;
+		order2Keys = new int[1 << bits];
+		order2Probs = new short[1 << bits];
+		for (Map.Entry<Integer, int[]> e : count2.entrySet()) {
+			int key = e.getKey();
+			int x = slot(key);
+			while (order2Keys[x] != 0)
+				x = (x + 1) & (order2Keys.length - 1);
+			order2Keys[x] = key + 1;
+			order2Probs[x] = toProb(blend(e.getValue()[0], e.getValue()[1], p1[key & 0xFFFF]));
+		}
+	}
+
+	/**
+	 * @return chance of a 1 from counts, leaning on the lower order chance when there are few counts
+	 */
+	private static double blend(int n0, int n1, double lower) {
+		return (n1 + BLEND * lower) / (n0 + n1 + BLEND);
+	}
+
+	private static short toProb(double p) {
+		return (short) Math.max(1, Math.min(PROBMAX - 1, Math.round(p * PROBMAX)));
+	}
+
+	private static int slot(int key) {
+		return (key * -1640531535) >>> order2Shift;
+	}
+
+	/**
+	 * @return chance of a 1 bit * PROBMAX in this context
+	 */
+	private static int prob(int c2, int c1, int node) {
+		int key = c2 << 16 | c1 << 8 | node;
+		for (int x = slot(key);; x = (x + 1) & (order2Keys.length - 1)) {
+			if (order2Keys[x] == key + 1)
+				return order2Probs[x];
+			if (order2Keys[x] == 0)
+				return ORDER1[c1 << 8 | node]; //not seen in training, fall back
+		}
+	}
+
+	/**
+	 * Compress bytes, never fails
+	 *
+	 * @param input
+	 *            bytes to compress
+	 * @return compressed bytes
+	 */
+	public static byte[] compress(byte[] input) {
+
+		byte[] out = new byte[input.length + 16];
+		int o = 0;
+
+		int len = input.length; //length, 7 bits per byte
+		for (; len >= 0x80; len >>>= 7)
+			out[o++] = (byte) (len | 0x80);
+		out[o++] = (byte) len;
+
+		long x1 = 0, x2 = 0xFFFFFFFFL; //range, both ends included
+		int c1 = 0, c2 = 0;
+
+		for (byte b : input) {
+			for (int node = 1, bit = 7; bit >= 0; bit--) {
+				int y = (b >>> bit) & 1;
+				long mid = x1 + ((x2 - x1) >>> PROBBITS) * prob(c2, c1, node);
+				if (y == 1)
+					x2 = mid;
+				else
+					x1 = mid + 1;
+				node = node << 1 | y;
+
+				while (((x1 ^ x2) & 0xFF000000L) == 0) { //top byte is settled
+					if (o == out.length)
+						out = Arrays.copyOf(out, out.length * 2);
+					out[o++] = (byte) (x2 >>> 24);
+					x1 = (x1 << 8) & 0xFFFFFFFFL;
+					x2 = ((x2 << 8) & 0xFFFFFFFFL) | 0xFF;
+				}
+			}
+			c2 = c1;
+			c1 = b & 0xFF;
+		}
+
+		if (o == out.length)
+			out = Arrays.copyOf(out, out.length + 1);
+		if (input.length > 0)
+			out[o++] = (byte) ((x1 >>> 24) + 1); //any value after this byte is in the range, missing bytes read as 0
+
+		return Arrays.copyOf(out, o);
+	}
+
+	/**
+	 * Decompress bytes made by compress()
+	 *
+	 * @param input
+	 *            compressed bytes
+	 * @return uncompressed bytes
+	 * @throws DataFormatException
+	 *             When input was not properly compressed or was too short.
+	 */
+	public static byte[] decompress(byte[] input) throws DataFormatException {
+		return decompress(input, Compression.MAXARRAY);
+	}
+
+	/**
+	 * Decompress bytes made by compress(), unless the uncompressed size is over a limit
+	 *
+	 * @param input
+	 *            compressed bytes
+	 * @param limit
+	 *            most uncompressed bytes allowed
+	 * @return uncompressed bytes
+	 * @throws DataFormatException
+	 *             When input was not properly compressed, was too short or is larger than limit uncompressed.
+	 */
+	public static byte[] decompress(byte[] input, long limit) throws DataFormatException {
+
+		int len = 0, x = 0;
+		for (int shift = 0;; shift += 7) {
+			if (x == input.length || shift > 28)
+				throw new DataFormatException("Invalid uncompressed length");
+			len |= (input[x] & 0x7F) << shift;
+			if ((input[x++] & 0x80) == 0)
+				break;
+		}
+		if (len < 0 || len > (long) (input.length - x) * MAXRATIO)
+			throw new DataFormatException("Invalid uncompressed length");
+		if (len > limit)
+			throw new DataFormatException("Decompressed data is larger than the limit of " + limit + " bytes");
+
+		byte[] out = new byte[len];
+		long x1 = 0, x2 = 0xFFFFFFFFL, v = 0;
+		for (int y = 0; y < 4; y++)
+			v = v << 8 | (x < input.length ? input[x++] & 0xFF : 0);
+
+		int c1 = 0, c2 = 0;
+		for (int o = 0; o < len; o++) {
+			int node = 1;
+			while (node < 256) {
+				long mid = x1 + ((x2 - x1) >>> PROBBITS) * prob(c2, c1, node);
+				if (v <= mid) {
+					x2 = mid;
+					node = node << 1 | 1;
+				} else {
+					x1 = mid + 1;
+					node <<= 1;
+				}
+
+				while (((x1 ^ x2) & 0xFF000000L) == 0) {
+					x1 = (x1 << 8) & 0xFFFFFFFFL;
+					x2 = ((x2 << 8) & 0xFFFFFFFFL) | 0xFF;
+					v = ((v << 8) & 0xFFFFFFFFL) | (x < input.length ? input[x++] & 0xFF : 0);
+				}
+			}
+			out[o] = (byte) node;
+			c2 = c1;
+			c1 = node & 0xFF;
+		}
+
+		return out;
+	}
+}
@@ -58,6 +58,15 @@ public class MainWindow {
 	 * Launch the application.
 	 */
 	public static void main(String[] args) {
+		Thread benchmark = new Thread(new Runnable() { //time ciphers now so shared secret settings open quickly
+			public void run() {
+				SharedSecrets.recommendedAlgorithmCode();
+			}
+		});
+		benchmark.setDaemon(true);
+		benchmark.setPriority(Thread.MIN_PRIORITY);
+		benchmark.start();
+		
 		EventQueue.invokeLater(new Runnable() {
 			public void run() {
 				try {
@@ -80,6 +89,8 @@ public class MainWindow {
 			context.addBinaryEncoder(new Hexadecimal());
 			context.addBinaryEncoder(new Base64URL());
 			context.addBinaryEncoder(new CJK4096());
+			context.addBinaryEncoder(new Base32768());
+			context.addBinaryEncoder(new Base85());
 			context.addBinaryEncoder(new Emoji256());
 			
 			sharedsecrets = new SharedSecrets();
@@ -338,13 +349,17 @@ public class MainWindow {
 		
 		JCheckBox chckbxEnableCompression = new JCheckBox("Enable Compression");
 		chckbxEnableCompression.setSelected(context.getCompression()!='0');
+		final char[] lastCompression = {context.getCompression()=='0'?'z':context.getCompression()}; //keep a loaded level or strategy when toggled
 		chckbxEnableCompression.addItemListener(new ItemListener() {
 			public void itemStateChanged(ItemEvent e) {
 				context.lock();
 				try {
 				if(e.getStateChange() == ItemEvent.DESELECTED)
+				{
+					lastCompression[0] = context.getCompression();
 					context.setCompression('0');
-				else context.setCompression('z');
+				}
+				else context.setCompression(lastCompression[0]=='0'?'z':lastCompression[0]);
 				}catch(QCError er) {}
 				context.unlock();
 			}
@@ -4,6 +4,7 @@ import javax.swing.JFrame;
 
 import quickcrypt.core.Base64URL;
 import quickcrypt.core.Context;
+import quickcrypt.core.Cryptography;
 import quickcrypt.core.QCError;
 import quickcrypt.core.Secret;
 import quickcrypt.core.SharedSecrets;
@@ -263,8 +264,14 @@ public class SharedSecretSettings extends EncryptorSettings{
 		frame.getContentPane().add(btnAddWithRandom);
 		
 		JComboBox<Object> Algo = new JComboBox<Object>();
-		Algo.setModel(new DefaultComboBoxModel<Object>(new String[] {"AES-128", "AES-256"}));
+		if(Cryptography.hasChaCha20()) //java 11 and newer
+			Algo.setModel(new DefaultComboBoxModel<Object>(new String[] {"AES-128", "AES-256", "AES-128-GCM", "AES-256-GCM", "ChaCha20-Poly1305"}));
+		else
+			Algo.setModel(new DefaultComboBoxModel<Object>(new String[] {"AES-128", "AES-256", "AES-128-GCM", "AES-256-GCM"}));
 		if(ss.getSymetricAlgorithmCode().equals("AS5"))Algo.setSelectedItem("AES-256");
+		else if(ss.getSymetricAlgorithmCode().equals("AG4"))Algo.setSelectedItem("AES-128-GCM");
+		else if(ss.getSymetricAlgorithmCode().equals("AG5"))Algo.setSelectedItem("AES-256-GCM");
+		else if(ss.getSymetricAlgorithmCode().equals("CP2"))Algo.setSelectedItem("ChaCha20-Poly1305");
 		else Algo.setSelectedItem("AES-128");
 		
 		Algo.addItemListener(new ItemListener() {
@@ -275,6 +282,15 @@ public class SharedSecretSettings extends EncryptorSettings{
 				
 				else if(name.equals("AES-256"))
 					ss.setSymetricAlgorithmCode("AS5");
+				
+				else if(name.equals("AES-128-GCM"))
+					ss.setSymetricAlgorithmCode("AG4");
+				
+				else if(name.equals("AES-256-GCM"))
+					ss.setSymetricAlgorithmCode("AG5");
+				
+				else if(name.equals("ChaCha20-Poly1305"))
+					ss.setSymetricAlgorithmCode("CP2");
 			}
 		});
 		Algo.setBounds(240, 39, 89, 20);
@@ -283,6 +299,11 @@ public class SharedSecretSettings extends EncryptorSettings{
 		JLabel lblAlgorithm = new JLabel("Algorithm:");
 		lblAlgorithm.setBounds(173, 39, 67, 20);
 		frame.getContentPane().add(lblAlgorithm);
+		
+		JLabel lblRecommended = new JLabel("Fastest here: "
+				+(SharedSecrets.recommendedAlgorithmCode().equals("CP2") ? "ChaCha20-Poly1305" : "AES-256-GCM"));
+		lblRecommended.setBounds(173, 62, 251, 20);
+		frame.getContentPane().add(lblRecommended);
 		frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 		frame.setVisible(true);
 	}